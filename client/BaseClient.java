@@ -11,27 +11,41 @@ import client.storage.SessionStore;
 import exception.EndpointUnreachableException;
 import java.io.IOException;
 import java.net.InetAddress;
+import java.net.InetSocketAddress;
 import java.net.Socket;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Path;
 import java.util.List;
 import java.util.Optional;
 import java.util.Properties;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.locks.Condition;
 import java.util.concurrent.locks.ReentrantLock;
 import java.util.function.Supplier;
+import protocol.ChannelConnection;
+import protocol.Connection;
+import protocol.KeepaliveService;
 import protocol.ProtocolParser;
 import protocol.ProtocolParserImpl;
 import protocol.ProtocolPort;
+import protocol.SocketConnection;
 import protocol.SocketProtocolPort;
+import protocol.codec.DeflateCodec;
+import protocol.codec.WireFormat;
 import protocol.unit.EofUnit;
 import protocol.unit.ListRoomsUnit;
 import protocol.unit.ProtocolUnit;
 import utils.ConfigUtils;
 import utils.SocketUtils;
+import utils.TimerWheel;
 
 public abstract class BaseClient {
     private static final String SESSION_PATH_FORMAT = "session%s.properties";
     private static final String CONFIG_PATH = "client.properties";
     private static final int INPUT_DELAY = 100;
+    private static final int TIMER_TICK = 100; // ms
+    private static final int TIMER_WHEEL_SIZE = 64;
 
     private final ProtocolPort port;
     private ClientState state;
@@ -40,6 +54,7 @@ public abstract class BaseClient {
 
     private boolean done;
     private boolean seenRooms;
+    private final AtomicInteger requestTags;
     private final ReentrantLock stateUpdateLock;
     private final Condition stateUpdateCondition;
 
@@ -52,6 +67,7 @@ public abstract class BaseClient {
 
         this.done = false;
         this.seenRooms = false;
+        this.requestTags = new AtomicInteger();
         this.stateUpdateLock = new ReentrantLock();
         this.stateUpdateCondition = stateUpdateLock.newCondition();
     }
@@ -74,6 +90,11 @@ public abstract class BaseClient {
         return port;
     }
 
+    // Tags for requests whose answers are matched by id rather than by order of arrival
+    public int nextRequestTag() {
+        return requestTags.incrementAndGet() & Integer.MAX_VALUE;
+    }
+
     public void setState(ClientState state) {
         this.state = state;
 
@@ -247,28 +268,43 @@ public abstract class BaseClient {
         }
     }
 
-    private static Socket createSocket(InetAddress address, int port, String password, String truststorePath) {
+    private static Connection createTlsConnection(InetAddress address, int port, String password, String truststorePath) {
         try {
             Socket socket = SocketUtils.newSSLSocket(address, port, password, truststorePath);
             SocketUtils.configureSocket(socket);
             Cli.printConnection("Socket port: " + socket.getLocalPort());
 
-            return socket;
+            return new SocketConnection(socket);
         } catch (IOException e) {
             return null;
         }
     }
 
-    protected static Optional<ProtocolPort> getProtocolPort() {
-        Properties config;
+    private static Connection createPlainConnection(int port) {
+        try {
+            Socket socket = new Socket();
+            socket.connect(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), SocketUtils.SO_TIMEOUT);
+            SocketUtils.configureSocket(socket);
+            Cli.printConnection("Socket port: " + socket.getLocalPort());
 
+            return new SocketConnection(socket);
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    private static Connection createUnixConnection(Path path) {
         try {
-            config = ConfigUtils.loadConfig(CONFIG_PATH);
+            SocketChannel channel = SocketChannel.open(UnixDomainSocketAddress.of(path));
+            Cli.printConnection("Unix socket: " + path);
+
+            return new ChannelConnection(channel);
         } catch (IOException e) {
-            Cli.printError("Failed to load config: " + e.getMessage());
-            return Optional.empty();
+            return null;
         }
+    }
 
+    private static Optional<Supplier<Connection>> getTlsConnectionFactory(Properties config) {
         List<String> missingKeys = ConfigUtils.getMissing(config,
                 List.of("host", "port", "truststore-password", "truststore"));
         if (!missingKeys.isEmpty()) {
@@ -294,14 +330,86 @@ public abstract class BaseClient {
         String truststorePath = config.getProperty("truststore");
         String password = config.getProperty("truststore-password");
 
+        return Optional.of(() -> createTlsConnection(address, port, password, truststorePath));
+    }
+
+    // Plaintext connections only ever go to the server on this host
+    private static Optional<Supplier<Connection>> getPlainConnectionFactory(Properties config) {
+        List<String> missingKeys = ConfigUtils.getMissing(config, List.of("plain-port"));
+        if (!missingKeys.isEmpty()) {
+            Cli.printError("Missing configuration keys: " + missingKeys);
+            return Optional.empty();
+        }
+
+        int port = ConfigUtils.getIntProperty(config, "plain-port");
+        if (port < 1024 || port > 65535) {
+            Cli.printError("Port number must be between 1024 and 65535, port " + port + " provided.");
+            return Optional.empty();
+        }
+
+        return Optional.of(() -> createPlainConnection(port));
+    }
+
+    private static Optional<Supplier<Connection>> getUnixConnectionFactory(Properties config) {
+        List<String> missingKeys = ConfigUtils.getMissing(config, List.of("unix-socket"));
+        if (!missingKeys.isEmpty()) {
+            Cli.printError("Missing configuration keys: " + missingKeys);
+            return Optional.empty();
+        }
+
+        Path path = Path.of(config.getProperty("unix-socket"));
+        return Optional.of(() -> createUnixConnection(path));
+    }
+
+    protected static Optional<ProtocolPort> getProtocolPort() {
+        Properties config;
+
+        try {
+            config = ConfigUtils.loadConfig(CONFIG_PATH);
+        } catch (IOException e) {
+            Cli.printError("Failed to load config: " + e.getMessage());
+            return Optional.empty();
+        }
+
+        String connectionType = config.getProperty("connection", "tls");
+        Optional<Supplier<Connection>> connectionFactory = switch (connectionType) {
+            case "tls" -> getTlsConnectionFactory(config);
+            case "plain" -> getPlainConnectionFactory(config);
+            case "unix" -> getUnixConnectionFactory(config);
+            default -> {
+                Cli.printError("Unknown connection type '" + connectionType + "', expected 'tls', 'plain' or 'unix'.");
+                yield Optional.empty();
+            }
+        };
+        if (connectionFactory.isEmpty())
+            return Optional.empty();
+
+        String wireFormatName = config.getProperty("wire-format", WireFormat.TEXT.getName());
+        Optional<WireFormat> wireFormat = WireFormat.fromString(wireFormatName);
+        if (wireFormat.isEmpty()) {
+            Cli.printError("Unknown wire format: " + wireFormatName);
+            return Optional.empty();
+        }
+
         ProtocolParser parser = new ProtocolParserImpl();
-        Supplier<Socket> socketFactory = () -> createSocket(address, port, password, truststorePath);
-        ProtocolPort protocolPort = new SocketProtocolPort(socketFactory, parser);
+        boolean compression = config.getProperty("compression", "none").equals(DeflateCodec.FEATURE);
+        boolean batching = ConfigUtils.getBooleanProperty(config, "batching", false);
+
+        int keepaliveInterval = ConfigUtils.getIntProperty(config, "keepalive-interval", KeepaliveService.DEFAULT_INTERVAL);
+        int deadPeerTimeout = ConfigUtils.getIntProperty(config, "dead-peer-timeout",
+                KeepaliveService.DEFAULT_DEAD_PEER_TIMEOUT);
+        TimerWheel wheel = new TimerWheel("keepalive", TIMER_TICK, TIMER_WHEEL_SIZE);
+        wheel.start();
+        KeepaliveService keepalive = new KeepaliveService(wheel, Math.max(1, keepaliveInterval),
+                Math.max(keepaliveInterval + 1, deadPeerTimeout));
+
+        ProtocolPort protocolPort = new SocketProtocolPort(connectionFactory.get(), parser, keepalive, wireFormat.get(),
+                compression, batching);
 
         try {
             protocolPort.connect();
         } catch (IOException | EndpointUnreachableException e) {
-            Cli.printError("Failed to connect to server at " + host + ":" + port + ": " + e.getMessage());
+            Cli.printError("Failed to connect to server (" + connectionType + "): " + e.getMessage());
             return Optional.empty();
         }
 
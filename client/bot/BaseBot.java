@@ -27,4 +27,13 @@ public abstract class BaseBot extends BaseClient {
     }
 
     protected abstract ClientState getTargetState(int syncId);
+
+    // Messages sent together on every period, 0 when the argument is not a number
+    protected static int parseBurst(String arg) {
+        try {
+            return Integer.parseInt(arg);
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
 }
@@ -16,24 +16,33 @@ public class FixedIntervalBot extends BaseBot {
     private static final int DEFAULT_PERIOD = 1000;
 
     private final int period;
+    private final int burst;
 
-    public FixedIntervalBot(ProtocolPort protocolPort, ProtocolParser parser, SessionStore session, String password, int period) {
+    public FixedIntervalBot(ProtocolPort protocolPort, ProtocolParser parser, SessionStore session, String password, int period,
+            int burst) {
         super(protocolPort, parser, session, password);
 
         this.period = period;
+        this.burst = burst;
     }
 
     @Override
     protected ClientState getTargetState(int syncId) {
-        return new FixedIntervalBotState(this, BotMessages.MESSAGES, period, syncId);
+        return new FixedIntervalBotState(this, BotMessages.MESSAGES, period, burst, syncId);
     }
 
     private static void printUsage() {
-        System.out.println("Usage: java client.bot.FixedIntervalBot <room>");
+        System.out.println("Usage: java client.bot.FixedIntervalBot <room> [burst]");
     }
 
     public static void main(String[] args) {
-        if (args.length != 1) {
+        if (args.length < 1 || args.length > 2) {
+            printUsage();
+            return;
+        }
+
+        int burst = args.length == 2 ? parseBurst(args[1]) : 1;
+        if (burst < 1) {
             printUsage();
             return;
         }
@@ -46,7 +55,7 @@ public class FixedIntervalBot extends BaseBot {
                 .orElseThrow(() -> new RuntimeException("Failed to create protocol port"));
         ProtocolParser parser = new ProtocolParserImpl();
 
-        FixedIntervalBot bot = new FixedIntervalBot(protocolPort, parser, session, DEFAULT_PASSWORD, DEFAULT_PERIOD);
+        FixedIntervalBot bot = new FixedIntervalBot(protocolPort, parser, session, DEFAULT_PASSWORD, DEFAULT_PERIOD, burst);
         bot.run();
     }
 }
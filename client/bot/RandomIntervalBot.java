@@ -16,24 +16,33 @@ public class RandomIntervalBot extends BaseBot {
     private static final int DEFAULT_MAX_PERIOD = 2000;
 
     private final int maxPeriod;
+    private final int burst;
 
-    public RandomIntervalBot(ProtocolPort protocolPort, ProtocolParser parser, SessionStore session, String password, int maxPeriod) {
+    public RandomIntervalBot(ProtocolPort protocolPort, ProtocolParser parser, SessionStore session, String password, int maxPeriod,
+            int burst) {
         super(protocolPort, parser, session, password);
 
         this.maxPeriod = maxPeriod;
+        this.burst = burst;
     }
 
     @Override
     protected ClientState getTargetState(int syncId) {
-        return new RandomIntervalBotState(this, BotMessages.MESSAGES, maxPeriod, syncId);
+        return new RandomIntervalBotState(this, BotMessages.MESSAGES, maxPeriod, burst, syncId);
     }
 
     private static void printUsage() {
-        System.out.println("Usage: java client.bot.RandomIntervalBot <room>");
+        System.out.println("Usage: java client.bot.RandomIntervalBot <room> [burst]");
     }
 
     public static void main(String[] args) {
-        if (args.length != 1) {
+        if (args.length < 1 || args.length > 2) {
+            printUsage();
+            return;
+        }
+
+        int burst = args.length == 2 ? parseBurst(args[1]) : 1;
+        if (burst < 1) {
             printUsage();
             return;
         }
@@ -46,7 +55,7 @@ public class RandomIntervalBot extends BaseBot {
                 .orElseThrow(() -> new RuntimeException("Failed to create protocol port"));
         ProtocolParser parser = new ProtocolParserImpl();
 
-        RandomIntervalBot bot = new RandomIntervalBot(protocolPort, parser, session, DEFAULT_PASSWORD, DEFAULT_MAX_PERIOD);
+        RandomIntervalBot bot = new RandomIntervalBot(protocolPort, parser, session, DEFAULT_PASSWORD, DEFAULT_MAX_PERIOD, burst);
         bot.run();
     }
 }
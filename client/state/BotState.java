@@ -1,20 +1,72 @@
 package client.state;
 
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Optional;
+import java.util.Queue;
+import java.util.Random;
 
 import client.BaseClient;
 import client.Cli;
+import protocol.ProtocolErrorIdentifier;
+import protocol.unit.ErrUnit;
 import protocol.unit.ProtocolUnit;
 import protocol.unit.RecvUnit;
+import protocol.unit.SendBatchUnit;
+import protocol.unit.SendUnit;
 import protocol.unit.SyncUnit;
 
 public abstract class BotState extends NonInteractiveState implements SynchronizableState {
+    private static final int INITIAL_BACKOFF = 500; // ms
+    private static final int MAX_BACKOFF = 8000; // ms
+
     private int lastId;
+    private volatile int backoff;
+    private final Queue<String> pendingBurst;
 
     public BotState(BaseClient client, int lastId) {
         super(client);
 
         this.lastId = lastId;
+        this.backoff = 0;
+        this.pendingBurst = new ArrayDeque<>();
+    }
+
+    // Called by bots before sending, slows them down while the server is rate limiting them
+    protected void waitBackoff() {
+        int delay = backoff;
+        if (delay == 0)
+            return;
+
+        try {
+            Thread.sleep(delay);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    protected static List<String> pickMessages(List<String> messages, int count, Random rng) {
+        List<String> picked = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            picked.add(messages.get(rng.nextInt(messages.size())));
+        }
+        return picked;
+    }
+
+    // A burst is sent as a single send-batch when the server accepts them, and one send at a time otherwise
+    protected ProtocolUnit buildBurst(List<String> burst) {
+        if (burst.size() > 1 && getClient().getPort().isBatching())
+            return new SendBatchUnit(burst);
+
+        pendingBurst.addAll(burst.subList(1, burst.size()));
+        return new SendUnit(burst.get(0));
+    }
+
+    // Rest of the last burst, to be sent before waiting for the next one
+    protected Optional<ProtocolUnit> nextPending() {
+        String message = pendingBurst.poll();
+        return message == null ? Optional.empty() : Optional.of(new SendUnit(message));
     }
 
     @Override
@@ -24,6 +76,9 @@ public abstract class BotState extends NonInteractiveState implements Synchroniz
             Cli.printMessage(unit.username(), unit.message(), unit.username().equals(username));
             lastId = unit.id();
 
+            if (unit.username().equals(username))  // Our messages are getting through again
+                backoff = 0;
+
             return Optional.empty();
         }
 
@@ -35,6 +90,17 @@ public abstract class BotState extends NonInteractiveState implements Synchroniz
         return Optional.empty();
     }
 
+    @Override
+    public Optional<ProtocolUnit> visit(ErrUnit unit) {
+        if (unit.id() == ProtocolErrorIdentifier.OVERFLOW && lastId != -1) // Server dropped our backlog
+            return Optional.of(getSyncUnit());
+
+        if (unit.id() == ProtocolErrorIdentifier.RATE_LIMITED)
+            backoff = Math.min(MAX_BACKOFF, Math.max(INITIAL_BACKOFF, backoff * 2));
+
+        return Optional.empty();
+    }
+
     @Override
     public int getSyncId() {
         return lastId;
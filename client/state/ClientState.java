@@ -4,6 +4,8 @@ import client.BaseClient;
 import java.util.Optional;
 import protocol.DefaultProtocolVisitor;
 import protocol.unit.ProtocolUnit;
+import protocol.unit.RecvBatchUnit;
+import protocol.unit.RecvUnit;
 
 public abstract class ClientState implements DefaultProtocolVisitor<Optional<ProtocolUnit>> {
     private BaseClient client;
@@ -20,6 +22,19 @@ public abstract class ClientState implements DefaultProtocolVisitor<Optional<Pro
         this.client = client;
     }
 
+    // Handled as if the units had arrived one by one, answering at most once
+    @Override
+    public Optional<ProtocolUnit> visit(RecvBatchUnit unit) {
+        Optional<ProtocolUnit> response = Optional.empty();
+        for (RecvUnit recvUnit : unit.units()) {
+            Optional<ProtocolUnit> unitResponse = visit(recvUnit);
+            if (response.isEmpty())
+                response = unitResponse;
+        }
+
+        return response;
+    }
+
     @Override
     public Optional<ProtocolUnit> visitDefault(ProtocolUnit unit) {
         return Optional.empty();
@@ -6,36 +6,40 @@ import java.util.Random;
 
 import client.BaseClient;
 import protocol.unit.ProtocolUnit;
-import protocol.unit.SendUnit;
 
 public class FixedIntervalBotState extends BotState {
     private final Random rng;
     private final List<String> messages;
     private final int period;
+    private final int burst;
 
     public FixedIntervalBotState(BaseClient client, List<String> messages, int period) {
-        this(client, messages, period, -1);
+        this(client, messages, period, 1, -1);
     }
 
-    public FixedIntervalBotState(BaseClient client, List<String> messages, int period, int lastId) {
+    public FixedIntervalBotState(BaseClient client, List<String> messages, int period, int burst, int lastId) {
         super(client, lastId);
 
         this.messages = messages;
         this.rng = new Random();
         this.period = period;
+        this.burst = burst;
     }
 
     @Override
     public Optional<ProtocolUnit> buildNextUnit() {
+        Optional<ProtocolUnit> pending = nextPending();
+        if (pending.isPresent())
+            return pending;
+
+        waitBackoff();
+
         try {
             Thread.sleep(period);
         } catch (InterruptedException e) {
             Thread.currentThread().interrupt();
         }
 
-        int messageIndex = rng.nextInt(messages.size());
-        String message = messages.get(messageIndex);
-
-        return Optional.of(new SendUnit(message));
+        return Optional.of(buildBurst(pickMessages(messages, burst, rng)));
     }
 }
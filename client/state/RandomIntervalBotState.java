@@ -6,36 +6,40 @@ import java.util.Random;
 
 import client.BaseClient;
 import protocol.unit.ProtocolUnit;
-import protocol.unit.SendUnit;
 
 public class RandomIntervalBotState extends BotState {
     private final List<String> messages;
     private final int maxPeriod;
+    private final int burst;
     private final Random rng;
 
     public RandomIntervalBotState(BaseClient client, List<String> messages, int maxPeriod) {
-        this(client, messages, maxPeriod, -1);
+        this(client, messages, maxPeriod, 1, -1);
     }
 
-    public RandomIntervalBotState(BaseClient client, List<String> messages, int maxPeriod, int lastId) {
+    public RandomIntervalBotState(BaseClient client, List<String> messages, int maxPeriod, int burst, int lastId) {
         super(client, lastId);
 
         this.messages = messages;
         this.maxPeriod = maxPeriod;
+        this.burst = burst;
         this.rng = new Random();
     }
 
     @Override
     public Optional<ProtocolUnit> buildNextUnit() {
+        Optional<ProtocolUnit> pending = nextPending();
+        if (pending.isPresent())
+            return pending;
+
+        waitBackoff();
+
         try {
             Thread.sleep(rng.nextLong(0, maxPeriod));
         } catch (InterruptedException e) {
             Thread.currentThread().interrupt();
         }
 
-        int messageIndex = rng.nextInt(messages.size());
-        String message = messages.get(messageIndex);
-
-        return Optional.of(new SendUnit(message));
+        return Optional.of(buildBurst(pickMessages(messages, burst, rng)));
     }
 }
@@ -2,27 +2,104 @@ package client.state;
 
 import client.Cli;
 
+import java.util.Optional;
+
 import client.BaseClient;
 import client.storage.SessionStore;
 import protocol.ProtocolErrorIdentifier;
+import protocol.unit.EnterUnit;
 import protocol.unit.ErrUnit;
+import protocol.unit.OkUnit;
 import protocol.unit.ProtocolUnit;
+import protocol.unit.TaggedUnit;
 import protocol.unit.TokenLoginUnit;
 
+// When the session was in a room, the enter request is sent right behind the login instead of waiting for its
+// answer. The server handles both in order, and the tags tell which answer belongs to which request.
 public class ReloginState extends WaitConfirmState {
     private ClientState oldState;
+    private final int loginTag;
+    private final int enterTag;
+    private boolean enterSent;
+    private boolean loginFailed;
 
     public ReloginState(BaseClient client, ClientState oldState) {
         super(client);
 
         this.oldState = oldState;
+        this.loginTag = client.nextRequestTag();
+        this.enterTag = client.nextRequestTag();
+        this.enterSent = false;
+        this.loginFailed = false;
+    }
+
+    @Override
+    public Optional<ProtocolUnit> buildNextUnit() {
+        Optional<ProtocolUnit> unit = super.buildNextUnit();
+        if (unit.isPresent() || enterSent)
+            return unit;
+
+        SessionStore session = getClient().getSession();
+        if (session.getRoom() == null)
+            return Optional.empty();
+
+        enterSent = true;
+        return Optional.of(new TaggedUnit(enterTag, new EnterUnit(session.getRoom())));
     }
 
     @Override
     protected ProtocolUnit buildUnitToSend() {
         BaseClient client = getClient();
         SessionStore session = client.getSession();
-        return new TokenLoginUnit(session.getToken());
+        return new TaggedUnit(loginTag, new TokenLoginUnit(session.getToken()));
+    }
+
+    @Override
+    public Optional<ProtocolUnit> visit(TaggedUnit unit) {
+        if (unit.tag() == loginTag)
+            return visitLogin(unit.unit());
+
+        if (unit.tag() == enterTag && !loginFailed)
+            visitEnter(unit.unit());
+
+        return Optional.empty();
+    }
+
+    private Optional<ProtocolUnit> visitLogin(ProtocolUnit unit) {
+        if (unit instanceof ErrUnit errUnit) {
+            loginFailed = true;
+            return visit(errUnit);
+        }
+
+        if (!(unit instanceof OkUnit))
+            return visitDefault(unit);
+
+        BaseClient client = getClient();
+        SessionStore session = client.getSession();
+        Cli.printResponse("Login successful: " + session.getUsername());
+
+        // Otherwise, the answer to the enter request decides the next state,
+        // unless it was already turned down because an earlier login attempt failed
+        if (session.getRoom() == null)
+            client.setState(new AuthState(client, session.getUsername()));
+        else if (loginFailed)
+            client.setState(new ReenterState(client, oldState));
+
+        return Optional.empty();
+    }
+
+    private void visitEnter(ProtocolUnit unit) {
+        BaseClient client = getClient();
+        SessionStore session = client.getSession();
+
+        if (!(unit instanceof OkUnit)) {  // Fall back to entering the room on its own
+            client.setState(new ReenterState(client, oldState));
+            return;
+        }
+
+        int lastId = oldState instanceof SynchronizableState syncState ? syncState.getSyncId() : -1;
+        Cli.printResponse("Entered room: " + session.getRoom());
+        client.setState(new RoomState(client, session.getUsername(), session.getRoom(), lastId));
     }
 
     @Override
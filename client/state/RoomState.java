@@ -6,7 +6,9 @@ import client.state.confirm.RoomConfirmer;
 import client.storage.SessionStore;
 import java.util.Map;
 import java.util.Optional;
+import protocol.ProtocolErrorIdentifier;
 import protocol.ProtocolParser;
+import protocol.unit.ErrUnit;
 import protocol.unit.OkUnit;
 import protocol.unit.ProtocolUnit;
 import protocol.unit.RecvUnit;
@@ -98,6 +100,20 @@ public class RoomState extends InteractiveState implements SynchronizableState {
         return Optional.empty();
     }
 
+    @Override
+    public Optional<ProtocolUnit> visit(ErrUnit unit) {
+        if (unit.id() == ProtocolErrorIdentifier.OVERFLOW && lastId != -1) // Server dropped our backlog
+            return Optional.of(getSyncUnit());
+
+        if (unit.id() == ProtocolErrorIdentifier.RATE_LIMITED)
+            Cli.printWarning("You are sending messages too fast, the last one was not delivered.");
+
+        if (unit.id() == ProtocolErrorIdentifier.TOO_LONG)
+            Cli.printWarning("The last message is too long and was not delivered.");
+
+        return Optional.empty();
+    }
+
     @Override
     public int getSyncId() {
         return lastId;
@@ -32,6 +32,8 @@ public class UnstableBotState extends BotState {
 
     @Override
     public Optional<ProtocolUnit> buildNextUnit() {
+        waitBackoff();
+
         try {
             Thread.sleep(period);
         } catch (InterruptedException e) {
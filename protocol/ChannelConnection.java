@@ -0,0 +1,35 @@
+package protocol;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.SocketChannel;
+
+// Blocking socket channel, used for Unix domain sockets which have no java.net.Socket view
+public record ChannelConnection(SocketChannel channel) implements Connection {
+    @Override
+    public InputStream getInputStream() throws IOException {
+        return Channels.newInputStream(channel);
+    }
+
+    @Override
+    public OutputStream getOutputStream() throws IOException {
+        return Channels.newOutputStream(channel);
+    }
+
+    @Override
+    public void setReadTimeout(int timeout) {
+        // Channels have no read timeout, the peer is local and always answers
+    }
+
+    @Override
+    public boolean isClosed() {
+        return !channel.isOpen();
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
@@ -0,0 +1,17 @@
+package protocol;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+// A connected byte stream, either a (TLS or plain) socket or a socket channel such as a Unix domain socket
+public interface Connection extends Closeable {
+    InputStream getInputStream() throws IOException;
+    OutputStream getOutputStream() throws IOException;
+
+    // 0 blocks until data arrives. Connections without read timeouts ignore it.
+    void setReadTimeout(int timeout) throws IOException;
+
+    boolean isClosed();
+}
@@ -45,6 +45,16 @@ public interface DefaultProtocolVisitor<T> extends ProtocolVisitor<T> {
         return visitDefault(unit);
     }
 
+    @Override
+    default T visit(SendBatchUnit unit) {
+        return visitDefault(unit);
+    }
+
+    @Override
+    default T visit(RecvBatchUnit unit) {
+        return visitDefault(unit);
+    }
+
     @Override
     default T visit(SyncUnit unit) {
         return visitDefault(unit);
@@ -84,4 +94,15 @@ public interface DefaultProtocolVisitor<T> extends ProtocolVisitor<T> {
     default T visit(PongUnit unit) {
         return visitDefault(unit);
     }
+
+    @Override
+    default T visit(UpgradeUnit unit) {
+        return visitDefault(unit);
+    }
+
+    // Visitors that do not care about tags see the unit as if it was sent without one
+    @Override
+    default T visit(TaggedUnit unit) {
+        return unit.unit().accept(this);
+    }
 }
@@ -0,0 +1,101 @@
+package protocol;
+
+import java.io.IOException;
+import protocol.unit.PingUnit;
+import protocol.unit.PongUnit;
+import protocol.unit.ProtocolUnit;
+import utils.TimerWheel;
+
+// Tracks the liveness of a single connection. Nothing is scheduled per read: a check is armed for the moment the
+// connection would become idle, and only connections that really went quiet get pinged. Pings back off while only
+// pongs come in, and a connection that stays silent for the dead peer timeout is closed.
+public class Keepalive {
+    private final KeepaliveService service;
+    private final ProtocolPort port;
+    private final int maxInterval;
+
+    private volatile long lastRead;
+    private volatile long lastTraffic;
+    private volatile boolean stopped;
+
+    // Wheel thread only
+    private long interval;
+    private long lastCheck;
+    private TimerWheel.Timeout timeout;
+
+    Keepalive(KeepaliveService service, ProtocolPort port) {
+        this.service = service;
+        this.port = port;
+        this.maxInterval = Math.max(service.getInterval(), service.getDeadPeerTimeout() / 2);
+
+        this.lastRead = System.currentTimeMillis();
+        this.lastTraffic = lastRead;
+        this.stopped = false;
+        this.interval = service.getInterval();
+        this.lastCheck = lastRead;
+    }
+
+    void start() {
+        timeout = service.schedule(this::check, interval);
+    }
+
+    public void onRead(ProtocolUnit unit) {
+        long now = System.currentTimeMillis();
+        lastRead = now;
+        if (!(unit instanceof PingUnit) && !(unit instanceof PongUnit))
+            lastTraffic = now;
+    }
+
+    public void stop() {
+        stopped = true;
+        TimerWheel.Timeout current = timeout;
+        if (current != null)
+            current.cancel();
+    }
+
+    private void check() {
+        if (stopped)
+            return;
+
+        long now = System.currentTimeMillis();
+        long idle = now - lastRead;
+
+        if (idle >= service.getDeadPeerTimeout()) {
+            Thread.ofVirtual().start(this::closePort);
+            return;
+        }
+
+        if (lastTraffic > lastCheck)  // Real traffic since the last check, go back to the base interval
+            interval = service.getInterval();
+        lastCheck = now;
+
+        long next;
+        if (idle < interval) {
+            next = interval - idle;
+        } else {
+            Thread.ofVirtual().start(this::ping);
+            interval = Math.min(interval * 2, maxInterval);
+            next = Math.min(interval, service.getDeadPeerTimeout() - idle);
+        }
+
+        timeout = service.schedule(this::check, next);
+        if (stopped)  // Raced with stop()
+            timeout.cancel();
+    }
+
+    private void ping() {
+        try {
+            port.send(new PingUnit());
+        } catch (IOException e) {
+            closePort();
+        }
+    }
+
+    private void closePort() {
+        try {
+            port.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+}
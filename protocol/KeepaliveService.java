@@ -0,0 +1,36 @@
+package protocol;
+
+import utils.TimerWheel;
+
+public class KeepaliveService {
+    public static final int DEFAULT_INTERVAL = 5000; // ms
+    public static final int DEFAULT_DEAD_PEER_TIMEOUT = 20000; // ms
+
+    private final TimerWheel wheel;
+    private final int interval;
+    private final int deadPeerTimeout;
+
+    public KeepaliveService(TimerWheel wheel, int interval, int deadPeerTimeout) {
+        this.wheel = wheel;
+        this.interval = interval;
+        this.deadPeerTimeout = deadPeerTimeout;
+    }
+
+    public int getInterval() {
+        return interval;
+    }
+
+    public int getDeadPeerTimeout() {
+        return deadPeerTimeout;
+    }
+
+    public Keepalive watch(ProtocolPort port) {
+        Keepalive keepalive = new Keepalive(this, port);
+        keepalive.start();
+        return keepalive;
+    }
+
+    TimerWheel.Timeout schedule(Runnable task, long delayMillis) {
+        return wheel.schedule(task, delayMillis);
+    }
+}
@@ -0,0 +1,115 @@
+package protocol;
+
+import exception.EndpointUnreachableException;
+import java.io.IOException;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import protocol.unit.EofUnit;
+import protocol.unit.PingUnit;
+import protocol.unit.PongUnit;
+import protocol.unit.ProtocolUnit;
+
+// One end of an in-process connection, for running clients and the server inside the same JVM without sockets.
+// With a parser, every unit goes through serialize() and parse() on its way, so the text protocol cost is kept.
+public class MemoryProtocolPort implements ProtocolPort {
+    private final BlockingQueue<ProtocolUnit> inbound;
+    private final AtomicBoolean closed;
+    private final Optional<ProtocolParser> parser;
+    private MemoryProtocolPort peer;
+
+    private MemoryProtocolPort(Optional<ProtocolParser> parser) {
+        this.inbound = new LinkedBlockingQueue<>();
+        this.closed = new AtomicBoolean(false);
+        this.parser = parser;
+    }
+
+    public static Pair newPair() {
+        return newPair(Optional.empty());
+    }
+
+    public static Pair newPair(ProtocolParser parser) {
+        return newPair(Optional.of(parser));
+    }
+
+    private static Pair newPair(Optional<ProtocolParser> parser) {
+        MemoryProtocolPort client = new MemoryProtocolPort(parser);
+        MemoryProtocolPort server = new MemoryProtocolPort(parser);
+        client.peer = server;
+        server.peer = client;
+
+        return new Pair(client, server);
+    }
+
+    @Override
+    public void send(ProtocolUnit unit) throws IOException {
+        if (closed.get())  // If connection closed, just act as message lost
+            return;
+
+        peer.deliver(unit);
+    }
+
+    @Override
+    public void sendAll(List<ProtocolUnit> units) throws IOException {
+        for (ProtocolUnit unit : units) {
+            send(unit);
+        }
+    }
+
+    @Override
+    public ProtocolUnit receive() throws IOException {
+        try {
+            while (true) {
+                ProtocolUnit unit = inbound.take();
+                if (unit instanceof EofUnit) {
+                    inbound.add(unit);  // Keep EOF visible to later calls
+                    return unit;
+                } else if (unit instanceof PingUnit) {  // Respond to ping
+                    send(new PongUnit());
+                } else if (!(unit instanceof PongUnit)) {  // Ignore pong
+                    return unit;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return new EofUnit();
+        }
+    }
+
+    @Override
+    public void connect() throws EndpointUnreachableException, IOException {
+        // Pairs are connected from the start and cannot be reopened
+        if (closed.get())
+            throw new EndpointUnreachableException("Connection already closed");
+    }
+
+    @Override
+    public boolean isConnected() {
+        return !closed.get();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (!closed.compareAndSet(false, true))
+            return;
+
+        inbound.add(new EofUnit());
+        peer.closeFromPeer();
+    }
+
+    private void deliver(ProtocolUnit unit) {
+        if (closed.get())
+            return;
+
+        inbound.add(parser.map(p -> p.parse(unit.serialize())).orElse(unit));
+    }
+
+    private void closeFromPeer() {
+        if (closed.compareAndSet(false, true))
+            inbound.add(new EofUnit());
+    }
+
+    public record Pair(MemoryProtocolPort client, MemoryProtocolPort server) {}
+}
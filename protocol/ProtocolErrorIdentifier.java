@@ -9,6 +9,11 @@ public enum ProtocolErrorIdentifier {
     LOGIN,
     REGISTER,
     UNAUTHORIZED,
+    OVERFLOW,
+    UNSUPPORTED,
+    RATE_LIMITED,
+    STORAGE,
+    TOO_LONG,
     UNKNOWN;
 
     private final String name;
@@ -10,7 +10,8 @@ public enum ProtocolOkIdentifier {
     LIST_ROOMS,
     CREATE_ROOM,
     ENTER_ROOM,
-    LEAVE_ROOM;
+    LEAVE_ROOM,
+    UPGRADE;
 
     private final String name;
 
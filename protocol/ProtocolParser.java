@@ -1,7 +1,13 @@
 package protocol;
 
+import java.nio.ByteBuffer;
 import protocol.unit.ProtocolUnit;
 
 public interface ProtocolParser {
     ProtocolUnit parse(String string);
+
+    // Parses a single UTF-8 encoded line, without its terminator, from the readable bytes of the buffer
+    default ProtocolUnit parse(ByteBuffer line) {
+        return parse(ProtocolUtils.decode(line, line.position(), line.limit()));
+    }
 }
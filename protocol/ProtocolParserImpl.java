@@ -1,5 +1,8 @@
 package protocol;
 
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
@@ -20,7 +23,11 @@ import protocol.unit.ProtocolUnit;
 import protocol.unit.RegisterUnit;
 import protocol.unit.SendUnit;
 import protocol.unit.SyncUnit;
+import protocol.unit.TaggedUnit;
 import protocol.unit.RecvUnit;
+import protocol.unit.RecvBatchUnit;
+import protocol.unit.SendBatchUnit;
+import protocol.unit.UpgradeUnit;
 
 @FunctionalInterface
 interface ParseHandler {
@@ -29,6 +36,7 @@ interface ParseHandler {
 
 public class ProtocolParserImpl implements ProtocolParser {
     private final Map<String, ParseHandler> handlerMap;
+    private final Command[] commands;
 
     public ProtocolParserImpl() {
         this.handlerMap = Map.ofEntries(
@@ -41,11 +49,18 @@ public class ProtocolParserImpl implements ProtocolParser {
                 Map.entry("leave", this::buildLeave),
                 Map.entry("send", this::buildSend),
                 Map.entry("recv", this::buildRecv),
+                Map.entry("send-batch", this::buildSendBatch),
+                Map.entry("recv-batch", this::buildRecvBatch),
                 Map.entry("sync", this::buildSync),
                 Map.entry("ok", this::buildOk),
                 Map.entry("err", this::buildErr),
                 Map.entry("ping", this::buildPing),
-                Map.entry("pong", this::buildPong));
+                Map.entry("pong", this::buildPong),
+                Map.entry("upgrade", this::buildUpgrade));
+
+        this.commands = handlerMap.entrySet().stream()
+                .map(entry -> new Command(entry.getKey().getBytes(StandardCharsets.US_ASCII), entry.getValue()))
+                .toArray(Command[]::new);
     }
 
     @Override
@@ -54,6 +69,8 @@ public class ProtocolParserImpl implements ProtocolParser {
             return new EofUnit();
 
         string = string.strip();
+        if (string.startsWith("#"))
+            return parseTagged(string);
 
         int firstSpaceIndex = string.indexOf(' ');
         if (firstSpaceIndex == -1)
@@ -69,6 +86,94 @@ public class ProtocolParserImpl implements ProtocolParser {
         return handler.apply(args);
     }
 
+    // Same result as parse(String) on the decoded line, but the command is matched on its bytes and only the
+    // arguments are decoded. Lines that start or end with a non-ASCII character may start or end with unicode
+    // whitespace that strip() would remove, so those few take the string path instead.
+    @Override
+    public ProtocolUnit parse(ByteBuffer line) {
+        int start = line.position();
+        int end = line.limit();
+        if (start == end)
+            return new EofUnit();
+
+        while (start < end && isAsciiWhitespace(line.get(start)))
+            start++;
+        while (end > start && isAsciiWhitespace(line.get(end - 1)))
+            end--;
+
+        int commandEnd = start;
+        while (commandEnd < end && line.get(commandEnd) != ' ')
+            commandEnd++;
+
+        int argsStart = commandEnd;
+        while (argsStart < end && isAsciiWhitespace(line.get(argsStart)))
+            argsStart++;
+
+        if (isNonAscii(line, start, end) || isNonAscii(line, end - 1, end) || isNonAscii(line, argsStart, end))
+            return parse(ProtocolUtils.decode(line, line.position(), line.limit()));
+
+        if (start < end && line.get(start) == '#')
+            return parseTagged(line, start, commandEnd, argsStart, end);
+
+        ParseHandler handler = findHandler(line, start, commandEnd);
+        if (handler == null)
+            return new InvalidUnit();
+
+        List<String> args = ProtocolUtils.tokenize(line, argsStart, end);
+        return handler.apply(args);
+    }
+
+    // "#<tag> <unit>", tags cannot be nested
+    private ProtocolUnit parseTagged(String string) {
+        int firstSpaceIndex = string.indexOf(' ');
+        if (firstSpaceIndex == -1)
+            return new InvalidUnit();
+
+        Integer tag = parseInt(string.substring(1, firstSpaceIndex));
+        String unitString = string.substring(firstSpaceIndex).strip();
+        if (tag == null || tag < 0 || unitString.startsWith("#"))
+            return new InvalidUnit();
+
+        return new TaggedUnit(tag, parse(unitString));
+    }
+
+    private ProtocolUnit parseTagged(ByteBuffer line, int start, int tagEnd, int unitStart, int end) {
+        if (tagEnd == end)
+            return new InvalidUnit();
+
+        Integer tag = parseInt(ProtocolUtils.decode(line, start + 1, tagEnd));
+        if (tag == null || tag < 0 || line.get(unitStart) == '#')
+            return new InvalidUnit();
+
+        return new TaggedUnit(tag, parse(line.slice(unitStart, end - unitStart)));
+    }
+
+    private ParseHandler findHandler(ByteBuffer line, int start, int end) {
+        int length = end - start;
+
+        outer:
+        for (Command command : commands) {
+            if (command.name().length != length)
+                continue;
+
+            for (int i = 0; i < length; i++) {
+                if (command.name()[i] != line.get(start + i))
+                    continue outer;
+            }
+            return command.handler();
+        }
+
+        return null;
+    }
+
+    private static boolean isAsciiWhitespace(byte b) {
+        return b >= 0 && Character.isWhitespace(b);
+    }
+
+    private static boolean isNonAscii(ByteBuffer line, int index, int end) {
+        return index >= 0 && index < end && line.get(index) < 0;
+    }
+
     private ProtocolUnit buildLogin(List<String> args) {
         if (args.size() != 2)
             return new InvalidUnit();
@@ -142,6 +247,30 @@ public class ProtocolParserImpl implements ProtocolParser {
         return new RecvUnit(id, username, message);
     }
 
+    private ProtocolUnit buildSendBatch(List<String> args) {
+        if (args.isEmpty())
+            return new InvalidUnit();
+
+        return new SendBatchUnit(List.copyOf(args));
+    }
+
+    // Arguments are id, username and message for each unit
+    private ProtocolUnit buildRecvBatch(List<String> args) {
+        if (args.isEmpty() || args.size() % 3 != 0)
+            return new InvalidUnit();
+
+        List<RecvUnit> units = new ArrayList<>(args.size() / 3);
+        for (int i = 0; i < args.size(); i += 3) {
+            ProtocolUnit unit = buildRecv(args.subList(i, i + 3));
+            if (!(unit instanceof RecvUnit recvUnit))
+                return new InvalidUnit();
+
+            units.add(recvUnit);
+        }
+
+        return new RecvBatchUnit(units);
+    }
+
     private ProtocolUnit buildSync(List<String> args) {
         if (args.size() != 1)
             return new InvalidUnit();
@@ -200,6 +329,15 @@ public class ProtocolParserImpl implements ProtocolParser {
         return new PongUnit();
     }
 
+    private ProtocolUnit buildUpgrade(List<String> args) {
+        if (args.size() != 1)
+            return new InvalidUnit();
+
+        String feature = args.get(0);
+
+        return new UpgradeUnit(feature);
+    }
+
     private Integer parseInt(String str) {
         try {
             return Integer.parseInt(str);
@@ -207,4 +345,6 @@ public class ProtocolParserImpl implements ProtocolParser {
             return null;
         }
     }
+
+    private record Command(byte[] name, ParseHandler handler) {}
 }
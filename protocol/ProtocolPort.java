@@ -1,12 +1,26 @@
 package protocol;
 
 import java.io.IOException;
+import java.util.List;
 
 import exception.EndpointUnreachableException;
 import protocol.unit.ProtocolUnit;
+import protocol.unit.RecvUnit;
+import structs.Message;
 
 public interface ProtocolPort {
     void send(ProtocolUnit unit) throws IOException;
+    void sendAll(List<ProtocolUnit> units) throws IOException;
+
+    // Sends a recv unit for each message, ports with an encoder reuse the frames cached on the messages
+    default void sendMessages(List<Message> messages) throws IOException {
+        sendAll(messages.stream().map(message -> (ProtocolUnit) new RecvUnit(message)).toList());
+    }
+
+    // Whether recv-batch and send-batch units were agreed on with the peer
+    default boolean isBatching() {
+        return false;
+    }
 
     ProtocolUnit receive() throws IOException;
 
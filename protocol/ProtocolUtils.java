@@ -1,45 +1,193 @@
 package protocol;
 
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
 public class ProtocolUtils {
+    // Same tokens as matching "((?:[^"\\]|\\.)*+)"|([^\s"]+) over the stripped string: a quoted token
+    // runs to the next unescaped quote, anything else runs to the next whitespace or quote. A quote that
+    // is never closed, or whose body has a backslash before a line terminator, is skipped on its own.
     public static List<String> tokenize(String string) {
         string = string.strip();
         List<String> tokens = new ArrayList<>();
 
-        Pattern pattern = Pattern.compile("\"((?:[^\"\\\\]|\\\\.)*+)\"|([^\\s\"]+)");
-        Matcher matcher = pattern.matcher(string);
-        while (matcher.find()) {
-            if (matcher.group(1) != null) {
-                tokens.add(ProtocolUtils.unescapeSpecials(matcher.group(1)));
-            } else if (matcher.group(2) != null) {
-                tokens.add(matcher.group(2));
+        int length = string.length();
+        int i = 0;
+        while (i < length) {
+            char c = string.charAt(i);
+
+            if (c == '"') {
+                int end = findClosingQuote(string, i + 1);
+                if (end == -1) {
+                    i++;
+                } else {
+                    tokens.add(unescapeSpecials(string, i + 1, end));
+                    i = end + 1;
+                }
+            } else if (isRegexWhitespace(c)) {
+                i++;
+            } else {
+                int start = i;
+                while (i < length && (c = string.charAt(i)) != '"' && !isRegexWhitespace(c)) {
+                    i++;
+                }
+                tokens.add(string.substring(start, i));
+            }
+        }
+
+        return tokens;
+    }
+
+    // Same as tokenize(String) over the UTF-8 bytes between start and end, which must already be stripped.
+    // Delimiters are all ASCII, so only the tokens themselves are ever decoded.
+    public static List<String> tokenize(ByteBuffer buffer, int start, int end) {
+        List<String> tokens = new ArrayList<>();
+
+        int i = start;
+        while (i < end) {
+            byte b = buffer.get(i);
+
+            if (b == '"') {
+                int close = findClosingQuote(buffer, i + 1, end);
+                if (close == -1) {
+                    i++;
+                } else {
+                    tokens.add(unescapeSpecials(decode(buffer, i + 1, close)));
+                    i = close + 1;
+                }
+            } else if (isRegexWhitespace((char) b)) {
+                i++;
+            } else {
+                int tokenStart = i;
+                while (i < end && (b = buffer.get(i)) != '"' && !isRegexWhitespace((char) b)) {
+                    i++;
+                }
+                tokens.add(decode(buffer, tokenStart, i));
             }
         }
 
         return tokens;
     }
 
+    public static String decode(ByteBuffer buffer, int start, int end) {
+        if (buffer.hasArray())
+            return new String(buffer.array(), buffer.arrayOffset() + start, end - start, StandardCharsets.UTF_8);
+
+        byte[] bytes = new byte[end - start];
+        buffer.get(start, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    // Returns -1 when the quoted token starting at start cannot be closed
+    private static int findClosingQuote(String string, int start) {
+        int length = string.length();
+        for (int i = start; i < length; i++) {
+            char c = string.charAt(i);
+            if (c == '"')
+                return i;
+
+            if (c == '\\') {
+                if (i + 1 == length || isLineTerminator(string.charAt(i + 1)))
+                    return -1;
+                i++;
+            }
+        }
+
+        return -1;
+    }
+
+    private static int findClosingQuote(ByteBuffer buffer, int start, int end) {
+        for (int i = start; i < end; i++) {
+            byte b = buffer.get(i);
+            if (b == '"')
+                return i;
+
+            if (b == '\\') {
+                if (i + 1 == end || isLineTerminator(buffer, i + 1, end))
+                    return -1;
+                i++;  // Skipping only the first byte of a multi-byte character is fine, the rest are never ASCII
+            }
+        }
+
+        return -1;
+    }
+
+    // Characters matched by \s
+    private static boolean isRegexWhitespace(char c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == '\u000B' || c == '\f' || c == '\r';
+    }
+
+    // Characters not matched by .
+    private static boolean isLineTerminator(char c) {
+        return c == '\n' || c == '\r' || c == '\u0085' || c == '\u2028' || c == '\u2029';
+    }
+
+    // UTF-8 encodings of the characters not matched by .
+    private static boolean isLineTerminator(ByteBuffer buffer, int i, int end) {
+        byte b = buffer.get(i);
+        if (b == '\n' || b == '\r')
+            return true;
+        if (b == (byte) 0xC2)  // U+0085
+            return i + 1 < end && buffer.get(i + 1) == (byte) 0x85;
+        if (b == (byte) 0xE2)  // U+2028 and U+2029
+            return i + 2 < end && buffer.get(i + 1) == (byte) 0x80
+                    && (buffer.get(i + 2) == (byte) 0xA8 || buffer.get(i + 2) == (byte) 0xA9);
+        return false;
+    }
+
     public static String escapeToken(String token) {
-        return "\"" + ProtocolUtils.escapeSpecials(token) + "\"";
+        StringBuilder result = new StringBuilder(token.length() + 8);
+        result.append('"');
+        appendEscaped(token, result);
+        return result.append('"').toString();
     }
 
     public static String escapeSpecials(String s) {
-        return s.replace("\\", "\\\\")
-                .replace("\"", "\\\"")
-                .replace("\n", "\\n")
-                .replace("\r", "\\r")
-                .replace("\t", "\\t");
+        int i = 0;
+        while (i < s.length() && !needsEscape(s.charAt(i)))
+            i++;
+        if (i == s.length())  // Nothing to escape
+            return s;
+
+        StringBuilder result = new StringBuilder(s.length() + 8);
+        appendEscaped(s, result);
+        return result.toString();
     }
 
-    public static String unescapeSpecials(String s) {
-        StringBuilder result = new StringBuilder();
+    private static void appendEscaped(String s, StringBuilder result) {
         for (int i = 0; i < s.length(); i++) {
             char c = s.charAt(i);
-            if (c == '\\' && i + 1 < s.length()) {
+            switch (c) {
+                case '\\' -> result.append("\\\\");
+                case '"' -> result.append("\\\"");
+                case '\n' -> result.append("\\n");
+                case '\r' -> result.append("\\r");
+                case '\t' -> result.append("\\t");
+                default -> result.append(c);
+            }
+        }
+    }
+
+    private static boolean needsEscape(char c) {
+        return c == '\\' || c == '"' || c == '\n' || c == '\r' || c == '\t';
+    }
+
+    public static String unescapeSpecials(String s) {
+        return unescapeSpecials(s, 0, s.length());
+    }
+
+    private static String unescapeSpecials(String s, int start, int end) {
+        int escape = s.indexOf('\\', start, end);
+        if (escape == -1)  // Nothing to unescape, most tokens end here
+            return s.substring(start, end);
+
+        StringBuilder result = new StringBuilder(end - start);
+        result.append(s, start, escape);
+        for (int i = escape; i < end; i++) {
+            char c = s.charAt(i);
+            if (c == '\\' && i + 1 < end) {
                 char next = s.charAt(i + 1);
                 switch (next) {
                     case 'n': result.append('\n'); i++; break;
@@ -19,6 +19,10 @@ public interface ProtocolVisitor<T> {
 
     T visit(RecvUnit unit);
 
+    T visit(SendBatchUnit unit);
+
+    T visit(RecvBatchUnit unit);
+
     T visit(SyncUnit unit);
 
     T visit(OkUnit unit);
@@ -34,4 +38,8 @@ public interface ProtocolVisitor<T> {
     T visit(PingUnit unit);
 
     T visit(PongUnit unit);
+
+    T visit(UpgradeUnit unit);
+
+    T visit(TaggedUnit unit);
 }
@@ -1,53 +1,97 @@
 package protocol;
 
 import exception.EndpointUnreachableException;
-import java.io.BufferedReader;
+import exception.ProtocolException;
+import java.io.BufferedOutputStream;
 import java.io.IOException;
-import java.io.InputStreamReader;
-import java.io.PrintWriter;
-import java.net.Socket;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.util.List;
 import java.util.Optional;
 import java.util.concurrent.locks.ReentrantLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
 import java.util.function.Supplier;
+import protocol.codec.DeflateCodec;
+import protocol.codec.FrameBuffer;
+import protocol.codec.UnitCodec;
+import protocol.codec.WireFormat;
 import protocol.unit.EofUnit;
+import protocol.unit.ErrUnit;
+import protocol.unit.OkUnit;
 import protocol.unit.PingUnit;
 import protocol.unit.PongUnit;
 import protocol.unit.ProtocolUnit;
+import protocol.unit.RecvBatchUnit;
+import protocol.unit.UpgradeUnit;
+import structs.Message;
+import utils.SocketUtils;
 
 public class SocketProtocolPort implements ProtocolPort {
     private static final int INITIAL_BACKOFF = 1000; // ms
     private static final int MAX_RETRIES = 5;
+    private static final int WRITE_BUFFER_SIZE = 16384;  // One full TLS record
+    private static final int READ_BUFFER_SIZE = 16384;
 
-    private final Supplier<Socket> socketFactory;
+    private final Supplier<Connection> connectionFactory;
     private final ProtocolParser parser;
+    private final WireFormat wireFormat;
+    private final boolean compression;
+    private final boolean batching;
+    private final KeepaliveService keepaliveService;
 
-    private Optional<Socket> socket;
-    private Optional<BufferedReader> reader;
-    private Optional<PrintWriter> writer;
+    private Optional<Connection> connection;
+    private Optional<InputStream> input;
+    private Optional<OutputStream> output;
+    private volatile Keepalive keepalive;
+
+    // Always kept in read mode, guarded by readerLock
+    private ByteBuffer inBuffer;
+    // Guarded by writerLock
+    private final FrameBuffer outFrame;
+
+    private volatile UnitCodec decoder;
+    private volatile UnitCodec encoder;
+    private volatile boolean batchesAccepted;
 
     private final ReentrantReadWriteLock thisLock;
     private final ReentrantLock writerLock;
     private final ReentrantLock readerLock;
 
-    public SocketProtocolPort(Supplier<Socket> socketFactory, ProtocolParser parser) {
-        this.socketFactory = socketFactory;
+    public SocketProtocolPort(Supplier<Connection> connectionFactory, ProtocolParser parser,
+            KeepaliveService keepaliveService) {
+        this(connectionFactory, parser, keepaliveService, WireFormat.TEXT, false, false);
+    }
+
+    public SocketProtocolPort(Supplier<Connection> connectionFactory, ProtocolParser parser, KeepaliveService keepaliveService,
+            WireFormat wireFormat, boolean compression, boolean batching) {
+        this.connectionFactory = connectionFactory;
         this.parser = parser;
+        this.keepaliveService = keepaliveService;
+        this.wireFormat = wireFormat;
+        this.compression = compression;
+        this.batching = batching;
+
+        this.connection = Optional.empty();
+        this.input = Optional.empty();
+        this.output = Optional.empty();
 
-        this.socket = Optional.empty();
-        this.reader = Optional.empty();
-        this.writer = Optional.empty();
+        this.inBuffer = ByteBuffer.allocate(READ_BUFFER_SIZE).flip();
+        this.outFrame = new FrameBuffer(WRITE_BUFFER_SIZE);
+        this.decoder = WireFormat.TEXT.newCodec(parser);
+        this.encoder = WireFormat.TEXT.newCodec(parser);
 
         this.thisLock = new ReentrantReadWriteLock();
         this.readerLock = new ReentrantLock();
         this.writerLock = new ReentrantLock();
     }
 
-    public Optional<Socket> getSocket() {
+    public Optional<Connection> getConnection() {
         thisLock.readLock().lock();
         try {
-            return socket;
+            return connection;
         } finally {
             thisLock.readLock().unlock();
         }
@@ -55,25 +99,48 @@ public class SocketProtocolPort implements ProtocolPort {
 
     @Override
     public void send(ProtocolUnit unit) throws IOException {
-        PrintWriter writer;
+        sendAll(List.of(unit));
+    }
+
+    @Override
+    public void sendAll(List<ProtocolUnit> units) throws IOException {
+        write(encoder -> encoder.encodeAll(units, outFrame));
+    }
+
+    @Override
+    public void sendMessages(List<Message> messages) throws IOException {
+        if (batchesAccepted && messages.size() > 1)
+            write(encoder -> encoder.encodeBatch(messages, outFrame));
+        else
+            write(encoder -> encoder.encodeMessages(messages, outFrame));
+    }
+
+    @Override
+    public boolean isBatching() {
+        return batchesAccepted;
+    }
+
+    private void write(Consumer<UnitCodec> encode) throws IOException {
+        OutputStream output;
 
         thisLock.readLock().lock();
         try {
-            if (this.writer.isEmpty())  // If connection closed, just act as message lost
+            if (this.output.isEmpty())  // If connection closed, just act as message lost
                 return;
 
-            writer = this.writer.get();
+            output = this.output.get();
 
         } finally {
             thisLock.readLock().unlock();
         }
 
-        String serialized = unit.serialize();
-
         writerLock.lock();
         try {
-            writer.println(serialized);
-            writer.flush();
+            outFrame.reset();
+            encode.accept(encoder);
+
+            outFrame.writeTo(output);
+            output.flush();  // Single flush for the whole batch
         } finally {
             writerLock.unlock();
         }
@@ -81,16 +148,15 @@ public class SocketProtocolPort implements ProtocolPort {
 
     @Override
     public ProtocolUnit receive() throws IOException {
-        BufferedReader reader;
-        String line;
+        InputStream input;
         ProtocolUnit unit;
 
         thisLock.readLock().lock();
         try {
-            if (this.reader.isEmpty())
+            if (this.input.isEmpty())
                 return new EofUnit();
 
-            reader = this.reader.get();
+            input = this.input.get();
         } finally {
             thisLock.readLock().unlock();
         }
@@ -98,35 +164,21 @@ public class SocketProtocolPort implements ProtocolPort {
         while (true) {
             readerLock.lock();
             try {
-                line = reader.readLine();
-            } catch (SocketTimeoutException e) {
-                readerLock.unlock();
-                send(new PingUnit());
-
-                readerLock.lock();
-                try {
-                    line = reader.readLine();
-                } catch (SocketTimeoutException e2) { // On ping timeout, assume connection is lost
-                    close();
-                    return new EofUnit();
-                } catch (IOException e2) { // Connection reset by peer
-                    close();
-                    return new EofUnit();
-                }
-
-            } catch (IOException e) { // Connection reset by peer
+                unit = readUnit(input);
+            } catch (IOException | ProtocolException e) { // Connection reset by peer, closed by keepalive or corrupted
                 close();
                 return new EofUnit();
             } finally {
                 readerLock.unlock();
             }
 
-            if (line == null) { // Connection closed by peer
+            if (unit == null) { // Connection closed by peer
                 close();
                 return new EofUnit();
             }
 
-            unit = parser.parse(line);
+            if (keepalive != null)
+                keepalive.onRead(unit);
 
             if (unit instanceof PingUnit) {  // Respond to ping
                 send(new PongUnit());
@@ -134,6 +186,10 @@ public class SocketProtocolPort implements ProtocolPort {
 
             } else if (unit instanceof PongUnit) {  // Ignore pong
                 continue;
+
+            } else if (unit instanceof UpgradeUnit upgradeUnit) {
+                upgrade(upgradeUnit);
+                continue;
             }
 
             return unit;
@@ -144,17 +200,17 @@ public class SocketProtocolPort implements ProtocolPort {
     public void connect() throws EndpointUnreachableException, IOException {
         thisLock.readLock().lock();
         try {
-            if (socket.isPresent())
+            if (connection.isPresent())
                 return;
         } finally {
             thisLock.readLock().unlock();
         }
         
-        Optional<Socket> newSocketOpt = Optional.empty();
+        Optional<Connection> newConnectionOpt = Optional.empty();
         long backoff = INITIAL_BACKOFF;
         for (int tries = 0; tries < MAX_RETRIES; tries++) {
-            newSocketOpt = Optional.ofNullable(socketFactory.get());
-            if (newSocketOpt.isPresent())
+            newConnectionOpt = Optional.ofNullable(connectionFactory.get());
+            if (newConnectionOpt.isPresent())
                 break;
 
             System.out.println("Connection to server failed, retrying...");
@@ -168,30 +224,50 @@ public class SocketProtocolPort implements ProtocolPort {
             }
         }
 
-        if (newSocketOpt.isEmpty()) {
+        if (newConnectionOpt.isEmpty()) {
             throw new EndpointUnreachableException("Could not establish a connection to the server");
         }
 
         thisLock.writeLock().lock();
         try {
-            socket = newSocketOpt;
-            Socket newSocket = newSocketOpt.get();
+            connection = newConnectionOpt;
+            Connection newConnection = newConnectionOpt.get();
 
-            var input = newSocket.getInputStream();
-            reader = Optional.of(new BufferedReader(new InputStreamReader(input)));
+            input = Optional.of(newConnection.getInputStream());
+            output = Optional.of(new BufferedOutputStream(newConnection.getOutputStream(), WRITE_BUFFER_SIZE));
 
-            var output = newSocket.getOutputStream();
-            writer = Optional.of(new PrintWriter(output, true));
+            // Every connection starts in the text format
+            inBuffer.clear().flip();
+            decoder = WireFormat.TEXT.newCodec(parser);
+            encoder = WireFormat.TEXT.newCodec(parser);
+            batchesAccepted = false;
+
+            if (keepaliveService != null)
+                keepalive = keepaliveService.watch(this);
         } finally {
             thisLock.writeLock().unlock();
         }
+
+        if (wireFormat != WireFormat.TEXT) {
+            negotiate(wireFormat.getName(), () -> {
+                decoder = wireFormat.newCodec(parser);
+                encoder = wireFormat.newCodec(parser);
+            });
+        }
+
+        if (batching)
+            negotiate(RecvBatchUnit.FEATURE, () -> batchesAccepted = true);
+
+        // Only the server compresses, so only our decoder changes
+        if (compression)
+            negotiate(DeflateCodec.FEATURE, () -> decoder = new DeflateCodec(decoder));
     }
 
     @Override
     public boolean isConnected() {
         thisLock.readLock().lock();
         try {
-            return socket.isPresent();
+            return connection.isPresent();
         } finally {
             thisLock.readLock().unlock();
         }
@@ -201,17 +277,146 @@ public class SocketProtocolPort implements ProtocolPort {
     public void close() throws IOException {
         thisLock.writeLock().lock();
         try {
-            if (socket.isEmpty()) {
+            if (connection.isEmpty()) {
                 return;
             }
 
-            socket.get().close();
-            reader = Optional.empty();
-            writer = Optional.empty();
-            socket = Optional.empty();
+            connection.get().close();
+            if (keepalive != null)
+                keepalive.stop();
+            input = Optional.empty();
+            output = Optional.empty();
+            connection = Optional.empty();
 
         } finally {
             thisLock.writeLock().unlock();
         }
+
+        releaseEncoder();  // Outside thisLock, upgrades send while holding writerLock
+    }
+
+    // Client side: nothing else is written until the server answers, so both sides switch at the same byte
+    private void negotiate(String feature, Runnable onAccepted) throws IOException {
+        InputStream input;
+        Connection connection;
+
+        thisLock.readLock().lock();
+        try {
+            if (this.input.isEmpty())
+                return;
+
+            input = this.input.get();
+            connection = this.connection.get();
+        } finally {
+            thisLock.readLock().unlock();
+        }
+
+        writerLock.lock();
+        readerLock.lock();
+        try {
+            connection.setReadTimeout(SocketUtils.SO_TIMEOUT);  // Only while waiting for the answer
+            send(new UpgradeUnit(feature));
+
+            while (true) {
+                ProtocolUnit unit = readUnit(input);
+
+                if (unit == null) {
+                    close();
+                    return;
+                } else if (unit instanceof PingUnit) {
+                    send(new PongUnit());
+                } else if (unit instanceof OkUnit okUnit && okUnit.id() == ProtocolOkIdentifier.UPGRADE) {
+                    onAccepted.run();
+                    return;
+                } else if (unit instanceof ErrUnit) {  // Server does not support it, keep the current codecs
+                    return;
+                }
+            }
+        } catch (SocketTimeoutException e) {  // No answer, keep the current codecs
+            return;
+        } catch (ProtocolException e) {
+            close();
+        } finally {
+            if (!connection.isClosed())
+                connection.setReadTimeout(0);
+            readerLock.unlock();
+            writerLock.unlock();
+        }
+    }
+
+    // Server side: the peer waits for our answer before relying on the new format
+    private void upgrade(UpgradeUnit unit) throws IOException {
+        if (unit.feature().equals(RecvBatchUnit.FEATURE)) {  // Codecs stay the same, batches are just other units
+            send(new OkUnit(ProtocolOkIdentifier.UPGRADE, RecvBatchUnit.FEATURE));
+            batchesAccepted = true;
+            return;
+        }
+
+        if (unit.feature().equals(DeflateCodec.FEATURE)) {
+            writerLock.lock();
+            try {
+                if (encoder instanceof DeflateCodec) {
+                    send(new ErrUnit(ProtocolErrorIdentifier.UNSUPPORTED));
+                    return;
+                }
+
+                send(new OkUnit(ProtocolOkIdentifier.UPGRADE, DeflateCodec.FEATURE));
+                encoder = new DeflateCodec(encoder);
+            } finally {
+                writerLock.unlock();
+            }
+            return;
+        }
+
+        Optional<WireFormat> format = WireFormat.fromString(unit.feature());
+        if (format.isEmpty() || encoder instanceof DeflateCodec) {  // Formats cannot change under compression
+            send(new ErrUnit(ProtocolErrorIdentifier.UNSUPPORTED));
+            return;
+        }
+
+        decoder = format.get().newCodec(parser);
+
+        writerLock.lock();
+        try {
+            send(new OkUnit(ProtocolOkIdentifier.UPGRADE, format.get().getName()));
+            encoder = format.get().newCodec(parser);
+        } finally {
+            writerLock.unlock();
+        }
+    }
+
+    private void releaseEncoder() {
+        writerLock.lock();
+        try {
+            if (encoder instanceof DeflateCodec deflateCodec) {
+                deflateCodec.end();
+                encoder = WireFormat.TEXT.newCodec(parser);
+            }
+        } finally {
+            writerLock.unlock();
+        }
+    }
+
+    // Returns null when the peer closed the connection
+    private ProtocolUnit readUnit(InputStream input) throws IOException {
+        while (true) {
+            ProtocolUnit unit = decoder.decode(inBuffer);
+            if (unit != null)
+                return unit;
+
+            inBuffer.compact();
+            try {
+                if (!inBuffer.hasRemaining())  // Unit larger than the buffer
+                    inBuffer = ByteBuffer.allocate(inBuffer.capacity() * 2).put(inBuffer.flip());
+
+                int read = input.read(inBuffer.array(), inBuffer.arrayOffset() + inBuffer.position(), inBuffer.remaining());
+                if (read < 0)
+                    return null;
+
+                inBuffer.position(inBuffer.position() + read);
+            } finally {
+                inBuffer.flip();
+            }
+        }
     }
 }
@@ -0,0 +1,357 @@
+package protocol.codec;
+
+import exception.ProtocolException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import protocol.ProtocolErrorIdentifier;
+import protocol.ProtocolOkIdentifier;
+import protocol.unit.EnterUnit;
+import protocol.unit.ErrUnit;
+import protocol.unit.InvalidUnit;
+import protocol.unit.LeaveUnit;
+import protocol.unit.ListRoomsUnit;
+import protocol.unit.LoginUnit;
+import protocol.unit.LogoutUnit;
+import protocol.unit.OkUnit;
+import protocol.unit.PingUnit;
+import protocol.unit.PongUnit;
+import protocol.unit.ProtocolUnit;
+import protocol.unit.RecvBatchUnit;
+import protocol.unit.RecvUnit;
+import protocol.unit.RegisterUnit;
+import protocol.unit.SendBatchUnit;
+import protocol.unit.SendUnit;
+import protocol.unit.SyncUnit;
+import protocol.unit.TaggedUnit;
+import protocol.unit.TokenLoginUnit;
+import protocol.unit.UpgradeUnit;
+import structs.Message;
+
+// Frame layout: <varint body length> <opcode> <fields...>
+// Strings are a varint byte length followed by UTF-8 bytes, ids are varints.
+public class BinaryCodec implements UnitCodec {
+    public static final int MAX_FRAME_LENGTH = 1 << 20;
+
+    private static final byte OP_REGISTER = 0x01;
+    private static final byte OP_LOGIN = 0x02;
+    private static final byte OP_LOGIN_TOKEN = 0x03;
+    private static final byte OP_LOGOUT = 0x04;
+    private static final byte OP_LIST_ROOMS = 0x05;
+    private static final byte OP_ENTER = 0x06;
+    private static final byte OP_LEAVE = 0x07;
+    private static final byte OP_SEND = 0x08;
+    private static final byte OP_RECV = 0x09;
+    private static final byte OP_SYNC = 0x0A;
+    private static final byte OP_OK = 0x0B;
+    private static final byte OP_ERR = 0x0C;
+    private static final byte OP_PING = 0x0D;
+    private static final byte OP_PONG = 0x0E;
+    private static final byte OP_UPGRADE = 0x0F;
+    private static final byte OP_TAGGED = 0x10;
+    private static final byte OP_RECV_BATCH = 0x11;
+    private static final byte OP_SEND_BATCH = 0x12;
+
+    private final FrameBuffer body;
+
+    public BinaryCodec() {
+        this.body = new FrameBuffer();
+    }
+
+    @Override
+    public void encode(ProtocolUnit unit, FrameBuffer out) {
+        body.reset();
+        writeBody(unit);
+
+        out.writeVarint(body.size());
+        out.write(body);
+    }
+
+    private void writeBody(ProtocolUnit unit) {
+        switch (unit) {
+            case RegisterUnit u -> {
+                body.write(OP_REGISTER);
+                writeString(u.user());
+                writeString(u.pass());
+            }
+            case LoginUnit u -> {
+                body.write(OP_LOGIN);
+                writeString(u.user());
+                writeString(u.pass());
+            }
+            case TokenLoginUnit u -> {
+                body.write(OP_LOGIN_TOKEN);
+                writeString(u.token());
+            }
+            case LogoutUnit u -> body.write(OP_LOGOUT);
+            case ListRoomsUnit u -> body.write(OP_LIST_ROOMS);
+            case EnterUnit u -> {
+                body.write(OP_ENTER);
+                writeString(u.roomName());
+            }
+            case LeaveUnit u -> body.write(OP_LEAVE);
+            case SendUnit u -> {
+                body.write(OP_SEND);
+                writeString(u.message());
+            }
+            case RecvUnit u -> {
+                body.write(OP_RECV);
+                body.writeVarint(u.id());
+                writeString(u.username());
+                writeString(u.message());
+            }
+            case RecvBatchUnit u -> {
+                body.write(OP_RECV_BATCH);
+                for (RecvUnit recvUnit : u.units()) {
+                    body.writeVarint(recvUnit.id());
+                    writeString(recvUnit.username());
+                    writeString(recvUnit.message());
+                }
+            }
+            case SendBatchUnit u -> {
+                body.write(OP_SEND_BATCH);
+                for (String message : u.messages()) {
+                    writeString(message);
+                }
+            }
+            case SyncUnit u -> {
+                body.write(OP_SYNC);
+                body.writeVarint(u.vectorClock());
+            }
+            case OkUnit u -> {
+                body.write(OP_OK);
+                body.write(u.id().ordinal());
+                body.write(u.data().isPresent() ? 1 : 0);
+                if (u.data().isPresent())
+                    writeString(u.data().get());
+            }
+            case ErrUnit u -> {
+                body.write(OP_ERR);
+                body.write(u.id().ordinal());
+            }
+            case PingUnit u -> body.write(OP_PING);
+            case PongUnit u -> body.write(OP_PONG);
+            case UpgradeUnit u -> {
+                body.write(OP_UPGRADE);
+                writeString(u.feature());
+            }
+            case TaggedUnit u when !(u.unit() instanceof TaggedUnit) -> {
+                body.write(OP_TAGGED);
+                body.writeVarint(u.tag());
+                writeBody(u.unit());
+            }
+            default -> throw new ProtocolException("Unit cannot be sent: " + unit.serialize());
+        }
+    }
+
+    @Override
+    public void encodeMessages(List<Message> messages, FrameBuffer out) {
+        for (Message message : messages) {
+            out.write(message.getFrame(WireFormat.BINARY));
+        }
+    }
+
+    // Batches hold the fields of each unit back to back, so the fields of the cached recv frames are copied as they are
+    @Override
+    public void encodeBatch(List<Message> messages, FrameBuffer out) {
+        body.reset();
+
+        for (Message message : messages) {
+            byte[] frame = message.getFrame(WireFormat.BINARY);
+            int fieldsStart = varintLength(frame) + 1;  // Past the length and the opcode
+            int fieldsLength = frame.length - fieldsStart;
+
+            if (!body.isEmpty() && body.size() + fieldsLength > MAX_FRAME_LENGTH)
+                writeBatch(out);
+
+            if (body.isEmpty())
+                body.write(OP_RECV_BATCH);
+            body.write(frame, fieldsStart, fieldsLength);
+        }
+
+        writeBatch(out);
+    }
+
+    private void writeBatch(FrameBuffer out) {
+        out.writeVarint(body.size());
+        out.write(body);
+        body.reset();
+    }
+
+    @Override
+    public ProtocolUnit decode(ByteBuffer in) {
+        int start = in.position();
+
+        int length = readFrameLength(in);
+        if (length == -1) {
+            in.position(start);
+            return null;
+        }
+
+        // Checked before waiting for the body, so a huge length prefix cannot make the caller buffer without bound
+        if (length < 1 || length > MAX_FRAME_LENGTH)
+            throw new ProtocolException("Invalid frame length: " + length);
+
+        if (in.remaining() < length) {
+            in.position(start);
+            return null;
+        }
+
+        ByteBuffer frame = in.slice(in.position(), length);
+        in.position(in.position() + length);
+
+        try {
+            return decodeBody(frame);
+        } catch (BufferUnderflowException | IndexOutOfBoundsException e) {
+            return new InvalidUnit();
+        }
+    }
+
+    private ProtocolUnit decodeBody(ByteBuffer frame) {
+        ProtocolUnit unit = decodeUnit(frame);
+        return frame.hasRemaining() ? new InvalidUnit() : unit;
+    }
+
+    private ProtocolUnit decodeUnit(ByteBuffer frame) {
+        byte opcode = frame.get();
+
+        return switch (opcode) {
+            case OP_REGISTER -> new RegisterUnit(readString(frame), readString(frame));
+            case OP_LOGIN -> new LoginUnit(readString(frame), readString(frame));
+            case OP_LOGIN_TOKEN -> new TokenLoginUnit(readString(frame));
+            case OP_LOGOUT -> new LogoutUnit();
+            case OP_LIST_ROOMS -> new ListRoomsUnit();
+            case OP_ENTER -> new EnterUnit(readString(frame));
+            case OP_LEAVE -> new LeaveUnit();
+            case OP_SEND -> new SendUnit(readString(frame));
+            case OP_RECV -> {
+                int id = readVarint(frame);
+                yield id < 0 ? new InvalidUnit() : new RecvUnit(id, readString(frame), readString(frame));
+            }
+            case OP_SYNC -> {
+                int id = readVarint(frame);
+                yield id < 0 ? new InvalidUnit() : new SyncUnit(id);
+            }
+            case OP_OK -> decodeOk(frame);
+            case OP_ERR -> decodeErr(frame);
+            case OP_PING -> new PingUnit();
+            case OP_PONG -> new PongUnit();
+            case OP_UPGRADE -> new UpgradeUnit(readString(frame));
+            case OP_TAGGED -> decodeTagged(frame);
+            case OP_RECV_BATCH -> decodeRecvBatch(frame);
+            case OP_SEND_BATCH -> decodeSendBatch(frame);
+            default -> new InvalidUnit();
+        };
+    }
+
+    private ProtocolUnit decodeTagged(ByteBuffer frame) {
+        int tag = readVarint(frame);
+        if (tag < 0 || frame.get(frame.position()) == OP_TAGGED)  // Tags cannot be nested
+            return new InvalidUnit();
+
+        return new TaggedUnit(tag, decodeUnit(frame));
+    }
+
+    private ProtocolUnit decodeRecvBatch(ByteBuffer frame) {
+        List<RecvUnit> units = new ArrayList<>();
+        while (frame.hasRemaining()) {
+            int id = readVarint(frame);
+            if (id < 0)
+                return new InvalidUnit();
+
+            units.add(new RecvUnit(id, readString(frame), readString(frame)));
+        }
+
+        return units.isEmpty() ? new InvalidUnit() : new RecvBatchUnit(units);
+    }
+
+    private ProtocolUnit decodeSendBatch(ByteBuffer frame) {
+        List<String> messages = new ArrayList<>();
+        while (frame.hasRemaining()) {
+            messages.add(readString(frame));
+        }
+
+        return messages.isEmpty() ? new InvalidUnit() : new SendBatchUnit(messages);
+    }
+
+    private ProtocolUnit decodeOk(ByteBuffer frame) {
+        int ordinal = frame.get();
+        ProtocolOkIdentifier[] ids = ProtocolOkIdentifier.values();
+        if (ordinal < 0 || ordinal >= ids.length)
+            return new InvalidUnit();
+
+        Optional<String> data = frame.get() == 0 ? Optional.empty() : Optional.of(readString(frame));
+        return new OkUnit(ids[ordinal], data);
+    }
+
+    private ProtocolUnit decodeErr(ByteBuffer frame) {
+        int ordinal = frame.get();
+        ProtocolErrorIdentifier[] ids = ProtocolErrorIdentifier.values();
+        if (ordinal < 0 || ordinal >= ids.length)
+            return new InvalidUnit();
+
+        return new ErrUnit(ids[ordinal]);
+    }
+
+    private void writeString(String string) {
+        byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+        body.writeVarint(bytes.length);
+        body.write(bytes);
+    }
+
+    private static String readString(ByteBuffer frame) {
+        int length = readVarint(frame);
+        if (length < 0 || length > frame.remaining())
+            throw new BufferUnderflowException();
+
+        byte[] bytes = new byte[length];
+        frame.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static int readVarint(ByteBuffer frame) {
+        int value = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            byte b = frame.get();
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0)
+                return value;
+        }
+
+        throw new BufferUnderflowException();
+    }
+
+    // The opcode and fields of a complete frame, as counted by its length prefix
+    public static int bodyLength(byte[] frame) {
+        return frame.length - varintLength(frame);
+    }
+
+    private static int varintLength(byte[] bytes) {
+        int length = 1;
+        while ((bytes[length - 1] & 0x80) != 0)
+            length++;
+        return length;
+    }
+
+    // Returns -1 while the length prefix itself is incomplete
+    private static int readFrameLength(ByteBuffer in) {
+        int value = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            if (!in.hasRemaining())
+                return -1;
+
+            byte b = in.get();
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                if (value < 0)  // Would otherwise read as -1, "need more bytes"
+                    throw new ProtocolException("Invalid frame length: " + value);
+                return value;
+            }
+        }
+
+        throw new ProtocolException("Malformed frame length");
+    }
+}
@@ -0,0 +1,222 @@
+package protocol.codec;
+
+import exception.ProtocolException;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+import protocol.unit.ProtocolUnit;
+import structs.Message;
+
+// Wraps another codec in a stream of chunks: <marker: byte> <length: varint> <payload>
+// A marker of 0 means the payload holds raw units, 1 means it continues the shared deflate stream.
+// Every compressed chunk ends with a sync flush, so the peer can decode it without waiting for more.
+public class DeflateCodec implements UnitCodec {
+    public static final String FEATURE = "deflate";
+    public static final int DEFAULT_THRESHOLD = 256;  // bytes
+
+    private static final int RAW = 0;
+    private static final int DEFLATED = 1;
+    private static final int MAX_CHUNK_LENGTH = 1 << 20;
+    private static final int MAX_INFLATED_LENGTH = 4 << 20;
+
+    // Input of a single chunk. Deflate grows incompressible input a little, and the peer's inflated buffer also
+    // holds the partial unit left by the previous chunk, so half a chunk keeps both under the limits above.
+    private static final int MAX_CHUNK_INPUT = MAX_CHUNK_LENGTH / 2;
+
+    private final UnitCodec inner;
+    private final int threshold;
+
+    // Encoding side
+    private final FrameBuffer raw;
+    private final FrameBuffer compressed;
+    private final byte[] deflated;
+    private Deflater deflater;
+
+    // Decoding side, kept in read mode
+    private ByteBuffer inflated;
+    private Inflater inflater;
+
+    public DeflateCodec(UnitCodec inner) {
+        this(inner, DEFAULT_THRESHOLD);
+    }
+
+    public DeflateCodec(UnitCodec inner, int threshold) {
+        this.inner = inner;
+        this.threshold = threshold;
+
+        this.raw = new FrameBuffer();
+        this.compressed = new FrameBuffer();
+        this.deflated = new byte[8192];
+        this.inflated = ByteBuffer.allocate(0);
+    }
+
+    @Override
+    public void encode(ProtocolUnit unit, FrameBuffer out) {
+        encodeAll(List.of(unit), out);
+    }
+
+    @Override
+    public void encodeAll(List<ProtocolUnit> units, FrameBuffer out) {
+        raw.reset();
+        inner.encodeAll(units, raw);
+        writeChunk(out);
+    }
+
+    @Override
+    public void encodeMessages(List<Message> messages, FrameBuffer out) {
+        raw.reset();
+        inner.encodeMessages(messages, raw);
+        writeChunk(out);
+    }
+
+    @Override
+    public void encodeBatch(List<Message> messages, FrameBuffer out) {
+        raw.reset();
+        inner.encodeBatch(messages, raw);
+        writeChunk(out);
+    }
+
+    // Large outputs, like a sync catch-up, are split so every chunk stays within what the peer's decoder accepts
+    private void writeChunk(FrameBuffer out) {
+        if (raw.size() < threshold) {  // Not worth the extra latency
+            out.write(RAW);
+            out.writeVarint(raw.size());
+            out.write(raw);
+            return;
+        }
+
+        for (int offset = 0; offset < raw.size(); offset += MAX_CHUNK_INPUT) {
+            writeDeflated(offset, Math.min(MAX_CHUNK_INPUT, raw.size() - offset), out);
+        }
+    }
+
+    private void writeDeflated(int offset, int length, FrameBuffer out) {
+        if (deflater == null)
+            deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+
+        compressed.reset();
+        deflater.setInput(raw.array(), offset, length);
+        int count;
+        do {
+            count = deflater.deflate(deflated, 0, deflated.length, Deflater.SYNC_FLUSH);
+            compressed.write(deflated, 0, count);
+        } while (count == deflated.length);
+
+        out.write(DEFLATED);
+        out.writeVarint(compressed.size());
+        out.write(compressed);
+    }
+
+    @Override
+    public ProtocolUnit decode(ByteBuffer in) {
+        while (true) {
+            ProtocolUnit unit = inner.decode(inflated);
+            if (unit != null)
+                return unit;
+
+            if (!readChunk(in))
+                return null;
+        }
+    }
+
+    // Frees the native compression state, the codec must not be used afterwards
+    public void end() {
+        if (deflater != null)
+            deflater.end();
+        if (inflater != null)
+            inflater.end();
+    }
+
+    private boolean readChunk(ByteBuffer in) {
+        int start = in.position();
+        if (in.remaining() < 2)
+            return false;
+
+        int marker = in.get();
+        int length = readVarint(in);
+        if (length == -1) {
+            in.position(start);
+            return false;
+        }
+
+        // Checked before waiting for the payload, so a huge length cannot make the caller buffer without bound
+        if (length > MAX_CHUNK_LENGTH || (marker != RAW && marker != DEFLATED))
+            throw new ProtocolException("Invalid compressed chunk");
+
+        if (in.remaining() < length) {
+            in.position(start);
+            return false;
+        }
+
+        ByteBuffer payload = in.slice(in.position(), length);
+        in.position(in.position() + length);
+
+        inflated.compact();
+        try {
+            if (marker == RAW) {
+                ensureInflatedCapacity(length);
+                inflated.put(payload);
+            } else {
+                inflate(payload);
+            }
+        } finally {
+            inflated.flip();
+        }
+
+        return true;
+    }
+
+    private void inflate(ByteBuffer payload) {
+        if (inflater == null)
+            inflater = new Inflater(true);
+
+        inflater.setInput(payload);
+        try {
+            while (true) {
+                ensureInflatedCapacity(payload.remaining() * 2 + 64);
+                if (inflater.inflate(inflated) > 0)
+                    continue;
+
+                if (inflater.needsInput())
+                    break;
+                if (inflater.finished() || inflater.needsDictionary())
+                    throw new ProtocolException("Unexpected end of compressed stream");
+            }
+        } catch (DataFormatException e) {
+            throw new ProtocolException("Corrupted compressed stream");
+        }
+    }
+
+    // Called with the inflated buffer in write mode
+    private void ensureInflatedCapacity(int extra) {
+        if (inflated.remaining() >= extra)
+            return;
+
+        int needed = inflated.position() + extra;
+        if (needed > MAX_INFLATED_LENGTH)
+            throw new ProtocolException("Compressed chunk too large");
+
+        int capacity = Math.min(Math.max(inflated.capacity() * 2, needed), MAX_INFLATED_LENGTH);
+        inflated = ByteBuffer.allocate(capacity).put(inflated.flip());
+    }
+
+    private static int readVarint(ByteBuffer in) {
+        int value = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            if (!in.hasRemaining())
+                return -1;
+
+            byte b = in.get();
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                if (value < 0)  // Would otherwise read as -1, "need more bytes"
+                    throw new ProtocolException("Invalid compressed chunk");
+                return value;
+            }
+        }
+
+        throw new ProtocolException("Malformed chunk length");
+    }
+}
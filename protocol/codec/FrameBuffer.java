@@ -0,0 +1,79 @@
+package protocol.codec;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+public class FrameBuffer {
+    private static final int DEFAULT_CAPACITY = 256;
+
+    private byte[] data;
+    private int size;
+
+    public FrameBuffer() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public FrameBuffer(int capacity) {
+        this.data = new byte[capacity];
+        this.size = 0;
+    }
+
+    public byte[] array() {
+        return data;
+    }
+
+    public byte[] toByteArray() {
+        return Arrays.copyOf(data, size);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public void reset() {
+        size = 0;
+    }
+
+    public void write(int b) {
+        ensureCapacity(1);
+        data[size++] = (byte) b;
+    }
+
+    public void write(byte[] bytes) {
+        write(bytes, 0, bytes.length);
+    }
+
+    public void write(byte[] bytes, int offset, int length) {
+        ensureCapacity(length);
+        System.arraycopy(bytes, offset, data, size, length);
+        size += length;
+    }
+
+    public void write(FrameBuffer other) {
+        write(other.data, 0, other.size);
+    }
+
+    // Unsigned LEB128, negative values take the full 5 bytes
+    public void writeVarint(int value) {
+        ensureCapacity(5);
+        while ((value & ~0x7F) != 0) {
+            data[size++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        data[size++] = (byte) value;
+    }
+
+    public void writeTo(OutputStream out) throws IOException {
+        out.write(data, 0, size);
+    }
+
+    private void ensureCapacity(int extra) {
+        if (size + extra > data.length)
+            data = Arrays.copyOf(data, Math.max(data.length * 2, size + extra));
+    }
+}
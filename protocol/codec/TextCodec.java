@@ -0,0 +1,98 @@
+package protocol.codec;
+
+import exception.ProtocolException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import protocol.ProtocolParser;
+import protocol.unit.ProtocolUnit;
+import structs.Message;
+
+public class TextCodec implements UnitCodec {
+    public static final int MAX_FRAME_LENGTH = 1 << 20;
+
+    private static final byte[] RECV_BATCH = "recv-batch".getBytes(StandardCharsets.US_ASCII);
+    private static final int RECV_PREFIX_LENGTH = "recv ".length();
+
+    private final ProtocolParser parser;
+
+    // Bytes already searched for a line terminator, so partial lines are not scanned again
+    private int scanned;
+
+    public TextCodec(ProtocolParser parser) {
+        this.parser = parser;
+    }
+
+    @Override
+    public void encode(ProtocolUnit unit, FrameBuffer out) {
+        UnitWriter.write(unit, out);
+        out.write('\n');
+    }
+
+    @Override
+    public void encodeMessages(List<Message> messages, FrameBuffer out) {
+        for (Message message : messages) {
+            out.write(message.getFrame(WireFormat.TEXT));
+        }
+    }
+
+    // Each cached frame is "recv <fields>\n", so the fields are copied as they are into recv-batch lines
+    @Override
+    public void encodeBatch(List<Message> messages, FrameBuffer out) {
+        int lineLength = 0;  // Of the open recv-batch line, 0 when there is none
+
+        for (Message message : messages) {
+            byte[] frame = message.getFrame(WireFormat.TEXT);
+            int fieldsLength = frame.length - RECV_PREFIX_LENGTH - 1;
+            boolean fits = lineLength + 1 + fieldsLength <= MAX_FRAME_LENGTH;
+
+            if (lineLength > 0 && !fits) {
+                out.write('\n');
+                lineLength = 0;
+            }
+
+            if (RECV_BATCH.length + 1 + fieldsLength > MAX_FRAME_LENGTH) {  // Only fits on its own
+                out.write(frame);
+                continue;
+            }
+
+            if (lineLength == 0) {
+                out.write(RECV_BATCH);
+                lineLength = RECV_BATCH.length;
+            }
+
+            out.write(' ');
+            out.write(frame, RECV_PREFIX_LENGTH, fieldsLength);
+            lineLength += 1 + fieldsLength;
+        }
+
+        if (lineLength > 0)
+            out.write('\n');
+    }
+
+    @Override
+    public ProtocolUnit decode(ByteBuffer in) {
+        int start = in.position();
+        int end = in.limit();
+
+        for (int i = start + scanned; i < end; i++) {
+            if (in.get(i) != '\n')
+                continue;
+
+            int lineEnd = i > start && in.get(i - 1) == '\r' ? i - 1 : i;
+            if (lineEnd - start > MAX_FRAME_LENGTH)
+                throw new ProtocolException("Line exceeds " + MAX_FRAME_LENGTH + " bytes");
+
+            ProtocolUnit unit = parser.parse(in.slice(start, lineEnd - start));
+            in.position(i + 1);
+            scanned = 0;
+            return unit;
+        }
+
+        scanned = end - start;
+        if (scanned > MAX_FRAME_LENGTH + 1)  // Room for a \r that may still be followed by \n
+            throw new ProtocolException("Line exceeds " + MAX_FRAME_LENGTH + " bytes");
+
+        return null;
+    }
+}
@@ -0,0 +1,34 @@
+package protocol.codec;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+import protocol.unit.ProtocolUnit;
+import protocol.unit.RecvBatchUnit;
+import protocol.unit.RecvUnit;
+import structs.Message;
+
+public interface UnitCodec {
+    void encode(ProtocolUnit unit, FrameBuffer out);
+
+    default void encodeAll(List<ProtocolUnit> units, FrameBuffer out) {
+        for (ProtocolUnit unit : units) {
+            encode(unit, out);
+        }
+    }
+
+    // Encodes a recv unit for each message
+    default void encodeMessages(List<Message> messages, FrameBuffer out) {
+        for (Message message : messages) {
+            encode(new RecvUnit(message), out);
+        }
+    }
+
+    // Encodes the messages as recv-batch units, for peers that accepted them
+    default void encodeBatch(List<Message> messages, FrameBuffer out) {
+        encode(new RecvBatchUnit(messages.stream().map(RecvUnit::new).toList()), out);
+    }
+
+    // Decodes the next unit from the readable bytes of the buffer, advancing past it.
+    // Returns null, without consuming anything, while the next unit is still incomplete.
+    ProtocolUnit decode(ByteBuffer in);
+}
@@ -0,0 +1,187 @@
+package protocol.codec;
+
+import protocol.unit.EnterUnit;
+import protocol.unit.ErrUnit;
+import protocol.unit.LeaveUnit;
+import protocol.unit.ListRoomsUnit;
+import protocol.unit.LoginUnit;
+import protocol.unit.LogoutUnit;
+import protocol.unit.OkUnit;
+import protocol.unit.PingUnit;
+import protocol.unit.PongUnit;
+import protocol.unit.ProtocolUnit;
+import protocol.unit.RecvBatchUnit;
+import protocol.unit.RecvUnit;
+import protocol.unit.RegisterUnit;
+import protocol.unit.SendBatchUnit;
+import protocol.unit.SendUnit;
+import protocol.unit.SyncUnit;
+import protocol.unit.TaggedUnit;
+import protocol.unit.TokenLoginUnit;
+import protocol.unit.UpgradeUnit;
+
+// Writes the text form of a unit, the same bytes as serialize() in UTF-8, straight into a buffer.
+// Tokens are escaped and encoded in a single pass, so no intermediate strings are created.
+public class UnitWriter {
+    public static void write(ProtocolUnit unit, FrameBuffer out) {
+        switch (unit) {
+            case RecvUnit u -> {
+                writeAscii("recv ", out);
+                writeRecvFields(u, out);
+            }
+            case SendUnit u -> {
+                writeAscii("send ", out);
+                writeToken(u.message(), out);
+            }
+            case RecvBatchUnit u -> {
+                writeAscii("recv-batch", out);
+                for (RecvUnit recvUnit : u.units()) {
+                    out.write(' ');
+                    writeRecvFields(recvUnit, out);
+                }
+            }
+            case SendBatchUnit u -> {
+                writeAscii("send-batch", out);
+                for (String message : u.messages()) {
+                    out.write(' ');
+                    writeToken(message, out);
+                }
+            }
+            case SyncUnit u -> {
+                writeAscii("sync ", out);
+                writeInt(u.vectorClock(), out);
+            }
+            case OkUnit u -> {
+                writeAscii("ok ", out);
+                writeAscii(u.id().getName(), out);
+                if (u.data().isPresent()) {
+                    out.write(' ');
+                    writeToken(u.data().get(), out);
+                }
+            }
+            case ErrUnit u -> {
+                writeAscii("err ", out);
+                writeAscii(u.id().getName(), out);
+            }
+            case EnterUnit u -> {
+                writeAscii("enter ", out);
+                writeToken(u.roomName(), out);
+            }
+            case LoginUnit u -> {
+                writeAscii("login ", out);
+                writeUtf8(u.user(), out);
+                out.write(' ');
+                writeUtf8(u.pass(), out);
+            }
+            case RegisterUnit u -> {
+                writeAscii("register ", out);
+                writeUtf8(u.user(), out);
+                out.write(' ');
+                writeUtf8(u.pass(), out);
+            }
+            case TokenLoginUnit u -> {
+                writeAscii("login-token ", out);
+                writeUtf8(u.token(), out);
+            }
+            case UpgradeUnit u -> {
+                writeAscii("upgrade ", out);
+                writeUtf8(u.feature(), out);
+            }
+            case PingUnit u -> writeAscii("ping", out);
+            case PongUnit u -> writeAscii("pong", out);
+            case LeaveUnit u -> writeAscii("leave", out);
+            case LogoutUnit u -> writeAscii("logout", out);
+            case ListRoomsUnit u -> writeAscii("list-rooms", out);
+            case TaggedUnit u -> {
+                out.write('#');
+                writeInt(u.tag(), out);
+                out.write(' ');
+                write(u.unit(), out);
+            }
+            default -> writeUtf8(unit.serialize(), out);
+        }
+    }
+
+    private static void writeRecvFields(RecvUnit unit, FrameBuffer out) {
+        writeInt(unit.id(), out);
+        out.write(' ');
+        writeUtf8(unit.username(), out);
+        out.write(' ');
+        writeToken(unit.message(), out);
+    }
+
+    // Same as ProtocolUtils.escapeToken
+    public static void writeToken(String token, FrameBuffer out) {
+        out.write('"');
+        for (int i = 0; i < token.length(); i++) {
+            char c = token.charAt(i);
+            switch (c) {
+                case '\\' -> writeAscii("\\\\", out);
+                case '"' -> writeAscii("\\\"", out);
+                case '\n' -> writeAscii("\\n", out);
+                case '\r' -> writeAscii("\\r", out);
+                case '\t' -> writeAscii("\\t", out);
+                default -> i = writeChar(token, i, out);
+            }
+        }
+        out.write('"');
+    }
+
+    public static void writeUtf8(String string, FrameBuffer out) {
+        for (int i = 0; i < string.length(); i++) {
+            i = writeChar(string, i, out);
+        }
+    }
+
+    private static void writeAscii(String string, FrameBuffer out) {
+        for (int i = 0; i < string.length(); i++) {
+            out.write(string.charAt(i));
+        }
+    }
+
+    private static void writeInt(int value, FrameBuffer out) {
+        if (value < 0) {
+            if (value == Integer.MIN_VALUE) {
+                writeAscii(Integer.toString(value), out);
+                return;
+            }
+            out.write('-');
+            value = -value;
+        }
+
+        int divisor = 1;
+        while (value / divisor >= 10)
+            divisor *= 10;
+
+        for (; divisor > 0; divisor /= 10)
+            out.write('0' + value / divisor % 10);
+    }
+
+    // Encodes the character at index i, returning the index of the last char used.
+    // Unpaired surrogates become '?', like String.getBytes does.
+    private static int writeChar(String string, int i, FrameBuffer out) {
+        char c = string.charAt(i);
+
+        if (c < 0x80) {
+            out.write(c);
+        } else if (c < 0x800) {
+            out.write(0xC0 | (c >> 6));
+            out.write(0x80 | (c & 0x3F));
+        } else if (!Character.isSurrogate(c)) {
+            out.write(0xE0 | (c >> 12));
+            out.write(0x80 | ((c >> 6) & 0x3F));
+            out.write(0x80 | (c & 0x3F));
+        } else if (Character.isHighSurrogate(c) && i + 1 < string.length()
+                && Character.isLowSurrogate(string.charAt(i + 1))) {
+            int codePoint = Character.toCodePoint(c, string.charAt(++i));
+            out.write(0xF0 | (codePoint >> 18));
+            out.write(0x80 | ((codePoint >> 12) & 0x3F));
+            out.write(0x80 | ((codePoint >> 6) & 0x3F));
+            out.write(0x80 | (codePoint & 0x3F));
+        } else {
+            out.write('?');
+        }
+
+        return i;
+    }
+}
@@ -0,0 +1,35 @@
+package protocol.codec;
+
+import java.util.Optional;
+import protocol.ProtocolParser;
+
+public enum WireFormat {
+    TEXT,
+    BINARY;
+
+    private final String name;
+
+    private WireFormat() {
+        this.name = name().toLowerCase();
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public UnitCodec newCodec(ProtocolParser parser) {
+        return switch (this) {
+            case TEXT -> new TextCodec(parser);
+            case BINARY -> new BinaryCodec();
+        };
+    }
+
+    public static Optional<WireFormat> fromString(String name) {
+        for (WireFormat value: values()) {
+            if (value.name.equals(name))
+                return Optional.of(value);
+        }
+
+        return Optional.empty();
+    }
+}
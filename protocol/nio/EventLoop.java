@@ -0,0 +1,103 @@
+package protocol.nio;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+public class EventLoop implements Runnable {
+    private final String name;
+    private final Selector selector;
+    private final Queue<Runnable> tasks;
+    private final AtomicBoolean selecting;
+
+    // Scratch buffers shared by every connection of this loop, only touched from the loop thread
+    private final ByteBuffer netBuffer;
+    private final ByteBuffer appBuffer;
+    private final ByteBuffer outBuffer;
+
+    private Thread thread;
+
+    public EventLoop(String name, int packetSize, int appSize) throws IOException {
+        this.name = name;
+        this.selector = Selector.open();
+        this.tasks = new ConcurrentLinkedQueue<>();
+        this.selecting = new AtomicBoolean(false);
+
+        this.netBuffer = ByteBuffer.allocateDirect(packetSize);
+        this.appBuffer = ByteBuffer.allocate(appSize);
+        this.outBuffer = ByteBuffer.allocateDirect(packetSize);
+    }
+
+    public void start() {
+        thread = Thread.ofPlatform().name(name).start(this);
+    }
+
+    public boolean inLoop() {
+        return Thread.currentThread() == thread;
+    }
+
+    public void execute(Runnable task) {
+        tasks.add(task);
+        if (selecting.get())
+            selector.wakeup();
+    }
+
+    public void register(NioProtocolPort port) {
+        execute(() -> port.register(selector));
+    }
+
+    ByteBuffer getNetBuffer() {
+        return netBuffer;
+    }
+
+    ByteBuffer getAppBuffer() {
+        return appBuffer;
+    }
+
+    ByteBuffer getOutBuffer() {
+        return outBuffer;
+    }
+
+    @Override
+    public void run() {
+        while (selector.isOpen()) {
+            try {
+                selecting.set(true);
+                if (tasks.isEmpty())
+                    selector.select();
+                else
+                    selector.selectNow();
+                selecting.set(false);
+
+                runTasks();
+
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+
+                    if (key.isValid() && key.attachment() instanceof NioProtocolPort port)
+                        port.handle(key);
+                }
+            } catch (Exception e) {  // A misbehaving connection must never take the loop down
+                e.printStackTrace();
+            }
+        }
+    }
+
+    private void runTasks() {
+        Runnable task;
+        while ((task = tasks.poll()) != null) {
+            try {
+                task.run();
+            } catch (Exception e) {
+                e.printStackTrace();
+            }
+        }
+    }
+}
@@ -0,0 +1,502 @@
+package protocol.nio;
+
+import exception.EndpointUnreachableException;
+import exception.ProtocolException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLEngineResult;
+import protocol.Keepalive;
+import protocol.KeepaliveService;
+import protocol.ProtocolErrorIdentifier;
+import protocol.ProtocolOkIdentifier;
+import protocol.ProtocolParser;
+import protocol.ProtocolPort;
+import protocol.codec.DeflateCodec;
+import protocol.codec.FrameBuffer;
+import protocol.codec.UnitCodec;
+import protocol.codec.WireFormat;
+import protocol.unit.EofUnit;
+import protocol.unit.ErrUnit;
+import protocol.unit.OkUnit;
+import protocol.unit.PingUnit;
+import protocol.unit.PongUnit;
+import protocol.unit.ProtocolUnit;
+import protocol.unit.RecvBatchUnit;
+import protocol.unit.UpgradeUnit;
+import structs.Message;
+
+public class NioProtocolPort implements ProtocolPort {
+    private static final ByteBuffer EMPTY = ByteBuffer.allocate(0);
+    private static final int INITIAL_OUT_CAPACITY = 256;
+
+    // Senders wait once this many bytes are waiting for the loop, so a peer that stops reading fills the
+    // outbound message queue instead of the heap and the queue policy decides what happens
+    private static final int OUT_HIGH_WATER = 1 << 20;
+
+    // Reading stops once this many units wait to be handled, and starts again when they are down to the low mark
+    private static final int INBOUND_HIGH_WATER = 64;
+    private static final int INBOUND_LOW_WATER = 16;
+
+    private final SocketChannel channel;
+    private final SSLEngine engine;
+    private final EventLoop loop;
+    private final ProtocolParser parser;
+    private final KeepaliveService keepaliveService;
+
+    private final BlockingQueue<ProtocolUnit> inbound;
+    private final AtomicBoolean closed;
+    private final AtomicBoolean flushScheduled;
+    private final AtomicBoolean readPaused;
+    private volatile boolean batchesAccepted;
+    private final ReentrantLock outLock;
+    private final Condition outDrained;
+    private Keepalive keepalive;
+
+    // Guarded by outLock, filled by any sending thread
+    private FrameBuffer pendingOut;
+    private UnitCodec encoder;
+
+    // Loop thread only. Buffers are kept only while they hold leftover bytes,
+    // so an idle connection owns no buffers at all.
+    private SelectionKey key;
+    private ByteBuffer netIn;
+    private ByteBuffer netOut;
+    private ByteBuffer appOut;
+    private ByteBuffer partialUnit;
+    private UnitCodec decoder;
+    private boolean tasksRunning;
+    private boolean released;
+
+    public NioProtocolPort(SocketChannel channel, SSLEngine engine, EventLoop loop, ProtocolParser parser,
+            KeepaliveService keepaliveService) {
+        this.channel = channel;
+        this.engine = engine;
+        this.loop = loop;
+        this.parser = parser;
+        this.keepaliveService = keepaliveService;
+
+        this.inbound = new LinkedBlockingQueue<>();
+        this.closed = new AtomicBoolean(false);
+        this.flushScheduled = new AtomicBoolean(false);
+        this.readPaused = new AtomicBoolean(false);
+        this.outLock = new ReentrantLock();
+        this.outDrained = outLock.newCondition();
+
+        this.encoder = WireFormat.TEXT.newCodec(parser);
+        this.decoder = WireFormat.TEXT.newCodec(parser);
+    }
+
+    @Override
+    public void send(ProtocolUnit unit) throws IOException {
+        sendAll(List.of(unit));
+    }
+
+    @Override
+    public void sendAll(List<ProtocolUnit> units) throws IOException {
+        write(encoder -> encoder.encodeAll(units, pendingOut));
+    }
+
+    @Override
+    public void sendMessages(List<Message> messages) throws IOException {
+        if (batchesAccepted && messages.size() > 1)
+            write(encoder -> encoder.encodeBatch(messages, pendingOut));
+        else
+            write(encoder -> encoder.encodeMessages(messages, pendingOut));
+    }
+
+    @Override
+    public boolean isBatching() {
+        return batchesAccepted;
+    }
+
+    // Only the loop itself never waits, the units it writes (pongs and upgrade answers) are small
+    private void write(Consumer<UnitCodec> encode) throws IOException {
+        if (closed.get())  // If connection closed, just act as message lost
+            return;
+
+        outLock.lock();
+        try {
+            while (!loop.inLoop() && !closed.get() && pendingOut != null && pendingOut.size() >= OUT_HIGH_WATER)
+                outDrained.await();
+
+            if (closed.get())
+                return;
+
+            if (pendingOut == null)
+                pendingOut = new FrameBuffer(INITIAL_OUT_CAPACITY);
+
+            encode.accept(encoder);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for the peer to read", e);
+        } finally {
+            outLock.unlock();
+        }
+
+        scheduleFlush();
+    }
+
+    @Override
+    public ProtocolUnit receive() throws IOException {
+        try {
+            ProtocolUnit unit = inbound.take();
+            if (unit instanceof EofUnit)
+                inbound.add(unit);  // Keep EOF visible to later calls
+
+            if (inbound.size() <= INBOUND_LOW_WATER && readPaused.compareAndSet(true, false))
+                loop.execute(() -> pump(false));  // Turns reading back on
+
+            return unit;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return new EofUnit();
+        }
+    }
+
+    @Override
+    public void connect() throws EndpointUnreachableException, IOException {
+        // Ports are created from already accepted channels
+        if (closed.get())
+            throw new EndpointUnreachableException("Connection already closed");
+    }
+
+    @Override
+    public boolean isConnected() {
+        return !closed.get();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (!closed.compareAndSet(false, true))
+            return;
+
+        if (loop.inLoop())
+            release();
+        else
+            loop.execute(this::release);
+    }
+
+    private void scheduleFlush() {
+        if (flushScheduled.compareAndSet(false, true)) {
+            loop.execute(() -> {
+                flushScheduled.set(false);
+                pump(false);
+            });
+        }
+    }
+
+    void register(Selector selector) {
+        try {
+            key = channel.register(selector, SelectionKey.OP_READ, this);
+            engine.beginHandshake();
+            keepalive = keepaliveService.watch(this);
+        } catch (IOException e) {
+            closed.set(true);
+            release();
+            return;
+        }
+
+        pump(false);
+    }
+
+    void handle(SelectionKey key) {
+        pump(key.isReadable());
+    }
+
+    private void pump(boolean readable) {
+        if (closed.get()) {
+            release();
+            return;
+        }
+
+        ByteBuffer net = loop.getNetBuffer();
+        net.clear();
+        if (netIn != null) {
+            net.put(netIn);
+            netIn = null;
+        }
+
+        try {
+            if (readable) {
+                int read = channel.read(net);
+                if (read < 0) { // Connection closed by peer
+                    closed.set(true);
+                    return;
+                }
+            }
+            net.flip();
+
+            boolean progress = true;
+            while (progress && !tasksRunning && !closed.get()) {
+                progress = switch (engine.getHandshakeStatus()) {
+                    case NEED_TASK -> runDelegatedTasks();
+                    case NEED_WRAP -> wrap();
+                    case NEED_UNWRAP, NEED_UNWRAP_AGAIN -> unwrap(net);
+                    default -> (inbound.size() < INBOUND_HIGH_WATER && unwrap(net)) | wrap();  // Records wait in netIn
+                };
+            }
+
+            if (net.hasRemaining())
+                netIn = copyOf(net);
+
+            flushNet();
+        } catch (Exception e) { // Connection reset by peer or TLS failure
+            closed.set(true);
+        } finally {
+            if (closed.get())
+                release();
+            else
+                updateInterest();
+        }
+    }
+
+    private boolean unwrap(ByteBuffer net) throws IOException {
+        ByteBuffer app = loop.getAppBuffer();
+        app.clear();
+
+        SSLEngineResult result = engine.unwrap(net, app);
+
+        app.flip();
+        if (app.hasRemaining())
+            decode(app);
+
+        return switch (result.getStatus()) {
+            case OK -> result.bytesConsumed() > 0 || result.bytesProduced() > 0;
+            case CLOSED -> {
+                closed.set(true);
+                yield false;
+            }
+            default -> false;  // Underflow waits for more bytes from the socket
+        };
+    }
+
+    private boolean wrap() throws IOException {
+        if (!flushNet())  // Previous records still waiting on the socket
+            return false;
+
+        ByteBuffer out = loop.getOutBuffer();
+        out.clear();
+
+        SSLEngineResult result = engine.wrap(takeAppOut(), out);
+
+        out.flip();
+        channel.write(out);
+        if (out.hasRemaining())
+            netOut = copyOf(out);
+
+        if (result.getStatus() == SSLEngineResult.Status.CLOSED) {
+            closed.set(true);
+            return false;
+        }
+        return result.bytesProduced() > 0;
+    }
+
+    private ByteBuffer takeAppOut() {
+        if (appOut != null && appOut.hasRemaining())
+            return appOut;
+
+        outLock.lock();
+        try {
+            appOut = pendingOut == null ? null : ByteBuffer.wrap(pendingOut.array(), 0, pendingOut.size());
+            pendingOut = null;
+            outDrained.signalAll();
+        } finally {
+            outLock.unlock();
+        }
+
+        return appOut != null ? appOut : EMPTY;
+    }
+
+    private boolean flushNet() throws IOException {
+        if (netOut == null)
+            return true;
+
+        channel.write(netOut);
+        if (netOut.hasRemaining())
+            return false;
+
+        netOut = null;
+        return true;
+    }
+
+    private boolean runDelegatedTasks() {
+        tasksRunning = true;
+
+        // Certificate and key exchange work must never stall the other connections of this loop
+        Thread.ofVirtual().start(() -> {
+            Runnable task;
+            while ((task = engine.getDelegatedTask()) != null)
+                task.run();
+
+            loop.execute(() -> {
+                tasksRunning = false;
+                pump(false);
+            });
+        });
+
+        return false;
+    }
+
+    private void decode(ByteBuffer app) {
+        ByteBuffer in = app;
+        if (partialUnit != null) {
+            in = ByteBuffer.allocate(partialUnit.remaining() + app.remaining());
+            in.put(partialUnit).put(app).flip();
+        }
+
+        try {
+            ProtocolUnit unit;
+            while (!closed.get() && (unit = decoder.decode(in)) != null) {
+                onUnit(unit);
+            }
+        } catch (ProtocolException e) {  // Corrupted stream, nothing after this can be trusted
+            closed.set(true);
+        }
+
+        partialUnit = in.hasRemaining() && !closed.get() ? copyOf(in) : null;
+        app.position(app.limit());
+    }
+
+    private void onUnit(ProtocolUnit unit) {
+        keepalive.onRead(unit);
+
+        if (unit instanceof PingUnit) {  // Respond to ping
+            try {
+                send(new PongUnit());
+            } catch (IOException e) {
+                closed.set(true);
+            }
+        } else if (unit instanceof UpgradeUnit upgradeUnit) {
+            upgrade(upgradeUnit);
+        } else if (!(unit instanceof PongUnit)) {  // Ignore pong
+            inbound.add(unit);
+        }
+    }
+
+    // The peer waits for our answer before relying on the new format
+    private void upgrade(UpgradeUnit unit) {
+        if (unit.feature().equals(RecvBatchUnit.FEATURE)) {  // Codecs stay the same, batches are just other units
+            try {
+                send(new OkUnit(ProtocolOkIdentifier.UPGRADE, RecvBatchUnit.FEATURE));
+            } catch (IOException e) {
+                closed.set(true);
+            }
+            batchesAccepted = true;
+            return;
+        }
+
+        boolean deflate = unit.feature().equals(DeflateCodec.FEATURE);
+        Optional<WireFormat> format = WireFormat.fromString(unit.feature());
+
+        outLock.lock();
+        try {
+            boolean compressed = encoder instanceof DeflateCodec;
+            if (pendingOut == null)
+                pendingOut = new FrameBuffer(INITIAL_OUT_CAPACITY);
+
+            if (compressed || (!deflate && format.isEmpty())) {  // Formats cannot change under compression
+                encoder.encode(new ErrUnit(ProtocolErrorIdentifier.UNSUPPORTED), pendingOut);
+            } else if (deflate) {
+                encoder.encode(new OkUnit(ProtocolOkIdentifier.UPGRADE, DeflateCodec.FEATURE), pendingOut);
+                encoder = new DeflateCodec(encoder);
+            } else {
+                decoder = format.get().newCodec(parser);
+                encoder.encode(new OkUnit(ProtocolOkIdentifier.UPGRADE, format.get().getName()), pendingOut);
+                encoder = format.get().newCodec(parser);
+            }
+        } finally {
+            outLock.unlock();
+        }
+
+        scheduleFlush();
+    }
+
+    private void updateInterest() {
+        if (key == null || !key.isValid())
+            return;
+
+        int ops = tasksRunning || pauseReading() ? 0 : SelectionKey.OP_READ;
+        if (netOut != null)
+            ops |= SelectionKey.OP_WRITE;
+
+        if (key.interestOps() != ops)
+            key.interestOps(ops);
+    }
+
+    // The flag is raised before the queue is checked again, so a receiver that drains it in between either sees the
+    // flag and turns reading back on, or leaves the queue low enough for this check to keep reading
+    private boolean pauseReading() {
+        if (inbound.size() < INBOUND_HIGH_WATER)
+            return readPaused.get();
+
+        readPaused.set(true);
+        if (inbound.size() > INBOUND_LOW_WATER)
+            return true;
+
+        readPaused.set(false);
+        return false;
+    }
+
+    private void release() {
+        if (released)
+            return;
+        released = true;
+
+        try {
+            engine.closeOutbound();
+            ByteBuffer out = loop.getOutBuffer();
+            out.clear();
+            engine.wrap(EMPTY, out);  // Best effort close_notify
+            channel.write(out.flip());
+        } catch (IOException e) {
+            // Peer is already gone
+        }
+
+        if (key != null)
+            key.cancel();
+
+        if (keepalive != null)
+            keepalive.stop();
+
+        try {
+            channel.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+
+        outLock.lock();
+        try {
+            if (encoder instanceof DeflateCodec deflateCodec)
+                deflateCodec.end();
+            encoder = WireFormat.TEXT.newCodec(parser);
+            pendingOut = null;
+            outDrained.signalAll();
+        } finally {
+            outLock.unlock();
+        }
+
+        netIn = null;
+        netOut = null;
+        appOut = null;
+        partialUnit = null;
+        inbound.add(new EofUnit());
+    }
+
+    private static ByteBuffer copyOf(ByteBuffer buffer) {
+        ByteBuffer copy = ByteBuffer.allocate(buffer.remaining());
+        copy.put(buffer);
+        return copy.flip();
+    }
+}
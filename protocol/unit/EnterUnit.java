@@ -6,7 +6,7 @@ import protocol.ProtocolVisitor;
 public record EnterUnit(String roomName) implements ProtocolUnit {
     @Override
     public String serialize() {
-        return String.format("enter %s", ProtocolUtils.escapeToken(roomName));
+        return "enter " + ProtocolUtils.escapeToken(roomName);
     }
 
     @Override
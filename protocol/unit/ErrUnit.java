@@ -6,7 +6,7 @@ import protocol.ProtocolVisitor;
 public record ErrUnit(ProtocolErrorIdentifier id) implements ProtocolUnit {
     @Override
     public String serialize() {
-        return String.format("err %s", id.getName());
+        return "err " + id.getName();
     }
 
     @Override
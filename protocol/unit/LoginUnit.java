@@ -5,7 +5,7 @@ import protocol.ProtocolVisitor;
 public record LoginUnit(String user, String pass) implements ProtocolUnit {
     @Override
     public String serialize() {
-        return String.format("login %s %s", user, pass);
+        return "login " + user + " " + pass;
     }
 
     @Override
@@ -3,6 +3,7 @@ package protocol.unit;
 import java.util.Optional;
 
 import protocol.ProtocolOkIdentifier;
+import protocol.ProtocolUtils;
 import protocol.ProtocolVisitor;
 
 public record OkUnit(ProtocolOkIdentifier id, Optional<String> data) implements ProtocolUnit {
@@ -17,8 +18,8 @@ public record OkUnit(ProtocolOkIdentifier id, Optional<String> data) implements
     @Override
     public String serialize() {
         return data.isEmpty()
-            ? String.format("ok %s", id.getName())
-            : String.format("ok %s %s", id.getName(), data.get());
+            ? "ok " + id.getName()
+            : "ok " + id.getName() + " " + ProtocolUtils.escapeToken(data.get());
     }
 
     @Override
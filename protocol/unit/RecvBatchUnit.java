@@ -0,0 +1,24 @@
+package protocol.unit;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+import protocol.ProtocolUtils;
+import protocol.ProtocolVisitor;
+
+// Several recv units in one, only sent to clients that asked for it with "upgrade batch"
+public record RecvBatchUnit(List<RecvUnit> units) implements ProtocolUnit {
+    public static final String FEATURE = "batch";
+
+    @Override
+    public String serialize() {
+        return units.stream()
+                .map(unit -> " " + unit.id() + " " + unit.username() + " " + ProtocolUtils.escapeToken(unit.message()))
+                .collect(Collectors.joining("", "recv-batch", ""));
+    }
+
+    @Override
+    public <T> T accept(ProtocolVisitor<T> visitor) {
+        return visitor.visit(this);
+    }
+}
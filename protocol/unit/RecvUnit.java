@@ -11,7 +11,7 @@ public record RecvUnit(int id, String username, String message) implements Proto
 
     @Override
     public String serialize() {
-        return String.format("recv %d %s %s", id, username, ProtocolUtils.escapeToken(message));
+        return "recv " + id + " " + username + " " + ProtocolUtils.escapeToken(message);
     }
 
     @Override
@@ -5,7 +5,7 @@ import protocol.ProtocolVisitor;
 public record RegisterUnit(String user, String pass) implements ProtocolUnit {
     @Override
     public String serialize() {
-        return String.format("register %s %s", user, pass);
+        return "register " + user + " " + pass;
     }
 
     @Override
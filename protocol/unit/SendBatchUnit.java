@@ -0,0 +1,21 @@
+package protocol.unit;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+import protocol.ProtocolUtils;
+import protocol.ProtocolVisitor;
+
+public record SendBatchUnit(List<String> messages) implements ProtocolUnit {
+    @Override
+    public String serialize() {
+        return messages.stream()
+                .map(message -> " " + ProtocolUtils.escapeToken(message))
+                .collect(Collectors.joining("", "send-batch", ""));
+    }
+
+    @Override
+    public <T> T accept(ProtocolVisitor<T> visitor) {
+        return visitor.visit(this);
+    }
+}
@@ -11,7 +11,7 @@ public record SendUnit(String message) implements ProtocolUnit {
 
     @Override
     public String serialize() {
-        return String.format("send %s", ProtocolUtils.escapeToken(message));
+        return "send " + ProtocolUtils.escapeToken(message);
     }
 
     @Override
@@ -5,7 +5,7 @@ import protocol.ProtocolVisitor;
 public record SyncUnit(int vectorClock) implements ProtocolUnit {
     @Override
     public String serialize() {
-        return String.format("sync %d", vectorClock);
+        return "sync " + vectorClock;
     }
 
     @Override
@@ -0,0 +1,16 @@
+package protocol.unit;
+
+import protocol.ProtocolVisitor;
+
+// A request with an id chosen by the client, echoed on the ok or err that answers it
+public record TaggedUnit(int tag, ProtocolUnit unit) implements ProtocolUnit {
+    @Override
+    public String serialize() {
+        return "#" + tag + " " + unit.serialize();
+    }
+
+    @Override
+    public <T> T accept(ProtocolVisitor<T> visitor) {
+        return visitor.visit(this);
+    }
+}
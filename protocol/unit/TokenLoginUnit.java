@@ -5,7 +5,7 @@ import protocol.ProtocolVisitor;
 public record TokenLoginUnit(String token) implements ProtocolUnit {
     @Override
     public String serialize() {
-        return String.format("login-token %s", token);
+        return "login-token " + token;
     }
 
     @Override
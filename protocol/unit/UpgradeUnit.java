@@ -0,0 +1,15 @@
+package protocol.unit;
+
+import protocol.ProtocolVisitor;
+
+public record UpgradeUnit(String feature) implements ProtocolUnit {
+    @Override
+    public String serialize() {
+        return "upgrade " + feature;
+    }
+
+    @Override
+    public <T> T accept(ProtocolVisitor<T> visitor) {
+        return visitor.visit(this);
+    }
+}
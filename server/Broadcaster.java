@@ -0,0 +1,106 @@
+package server;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import server.client.RoomUser;
+import structs.DeliveryMode;
+import structs.Message;
+
+// Hands new room messages to the members' queues on a fixed set of workers, so the sender's thread
+// returns as soon as the message is appended. Members are split into shards by client thread ID and
+// each worker owns one shard of every room, so a member always gets a room's messages in the order
+// they were published. With no workers the fan-out runs on the sender's thread.
+public class Broadcaster {
+    private record Task(Message message, List<RoomUser> shard, long published) {}
+
+    private final DeliveryMode delivery;
+    private final BroadcastStats stats;
+    private final List<BlockingQueue<Task>> workers;
+
+    public Broadcaster(DeliveryMode delivery, int workerCount) {
+        this.delivery = delivery;
+        this.stats = new BroadcastStats();
+        this.workers = new ArrayList<>(workerCount);
+
+        for (int i = 0; i < workerCount; i++) {
+            BlockingQueue<Task> tasks = new LinkedBlockingQueue<>();
+            workers.add(tasks);
+            Thread.ofPlatform().name("broadcast-" + i).daemon().start(() -> process(tasks));
+        }
+    }
+
+    public BroadcastStats getStats() {
+        return stats;
+    }
+
+    public int getShardCount() {
+        return Math.max(1, workers.size());
+    }
+
+    public static int shardOf(RoomUser user, int shardCount) {
+        return Math.floorMod(user.getThread().getId(), shardCount);
+    }
+
+    // Callers publish the messages of a room one at a time, in table order
+    public void publish(Message message, List<List<RoomUser>> shards) {
+        if (delivery == DeliveryMode.CURSOR)  // Members read it from the room table themselves
+            return;
+
+        long published = System.nanoTime();
+        if (workers.isEmpty()) {
+            deliver(new Task(message, shards.get(0), published));
+            return;
+        }
+
+        for (int i = 0; i < shards.size(); i++) {
+            List<RoomUser> shard = shards.get(i);
+            if (!shard.isEmpty())
+                workers.get(i).add(new Task(message, shard, published));
+        }
+    }
+
+    // Logs the stats every interval while messages are being broadcast
+    public void logStats(long intervalMillis) {
+        Thread.ofVirtual().name("broadcast-stats").start(() -> {
+            long logged = 0;
+            try {
+                while (true) {
+                    Thread.sleep(intervalMillis);
+                    if (stats.getCount() == logged)
+                        continue;
+
+                    logged = stats.getCount();
+                    System.out.printf("[%s] Broadcast: %s\n", LocalDateTime.now(), stats);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+    }
+
+    private void process(BlockingQueue<Task> tasks) {
+        try {
+            while (true) {
+                deliver(tasks.take());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // Workers are shared by every room, so they never wait on a member's full queue
+    private void deliver(Task task) {
+        boolean shared = !workers.isEmpty();
+        for (RoomUser user : task.shard()) {
+            if (shared)
+                user.getThread().getMessageQueue().pushNow(task.message());
+            else
+                user.getThread().getMessageQueue().push(task.message());
+        }
+
+        stats.record(System.nanoTime() - task.published());
+    }
+}
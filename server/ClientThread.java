@@ -2,11 +2,15 @@ package server;
 
 import java.io.IOException;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Optional;
+import protocol.ProtocolErrorIdentifier;
 import protocol.ProtocolPort;
 import protocol.unit.EofUnit;
+import protocol.unit.ErrUnit;
 import protocol.unit.ProtocolUnit;
-import protocol.unit.RecvUnit;
+import protocol.unit.TaggedUnit;
 import server.client.Client;
 import structs.Message;
 import structs.MessageQueue;
@@ -16,6 +20,7 @@ public class ClientThread {
     private final Server server;
     private final ProtocolPort port;
     private final MessageQueue queue;
+    private final RateLimiter.Limits rateLimits;
     private Client client;
     private boolean done;
 
@@ -24,6 +29,7 @@ public class ClientThread {
         this.server = server;
         this.port = port;
         this.queue = queue;
+        this.rateLimits = server.getRateLimiter().newLimits();
         this.client = client;
         this.done = false;
     }
@@ -44,6 +50,14 @@ public class ClientThread {
         return queue;
     }
 
+    public boolean allowSend(String user) {
+        return server.getRateLimiter().allowSend(rateLimits, user);
+    }
+
+    public boolean allowSync(String user) {
+        return server.getRateLimiter().allowSync(rateLimits, user);
+    }
+
     public void setClient(Client client) {
         this.client = client;
     }
@@ -56,15 +70,36 @@ public class ClientThread {
     }
 
     private void handleSending() {
+        ServerConfig config = server.getConfig();
+        List<Message> batch = new ArrayList<>(config.getBatchSize());
+
         try {
             while (!done) {
                 Optional<Message> pendingMessage = queue.pop();
-                if (pendingMessage.isPresent()) {
-                    ProtocolUnit unit = new RecvUnit(pendingMessage.get());
+                if (pendingMessage.isEmpty()) {
+                    if (queue.isClosed()) {
+                        logOverflow("disconnecting");
+                        break;
+                    }
+
+                    if (queue.takeResync()) {  // Backlog was dropped, client has to catch up with sync
+                        logOverflow("requesting resync");
+                        ProtocolUnit unit = new ErrUnit(ProtocolErrorIdentifier.OVERFLOW);
+                        port.send(unit);
+                        logResponse(unit);
+                    }
+                    continue;
+                }
 
-                    port.send(unit);
-                    logResponse(unit);
+                batch.add(pendingMessage.get());
+                collectBatch(batch, config);
+
+                port.sendMessages(batch);
+                for (Message message : batch) {
+                    logResponse(message);
                 }
+
+                batch.clear();
             }
         } catch (IOException e) {
             e.printStackTrace();
@@ -73,6 +108,26 @@ public class ClientThread {
         }
     }
 
+    // Gathers whatever is already queued, waiting at most the batch delay for the batch to fill up
+    private void collectBatch(List<Message> batch, ServerConfig config) {
+        int maxSize = config.getBatchSize();
+        long deadline = System.currentTimeMillis() + config.getBatchDelay();
+
+        queue.drainTo(batch, maxSize - batch.size());
+        while (batch.size() < maxSize) {
+            long remaining = deadline - System.currentTimeMillis();
+            if (remaining <= 0)
+                break;
+
+            Optional<Message> message = queue.pop(remaining);
+            if (message.isEmpty())
+                break;
+
+            batch.add(message.get());
+            queue.drainTo(batch, maxSize - batch.size());
+        }
+    }
+
     private void handleReceiving() {
         try {
             while (!done) {
@@ -81,7 +136,7 @@ public class ClientThread {
                 if (request instanceof EofUnit)
                     break;
 
-                Optional<ProtocolUnit> response = request.accept(client);
+                Optional<ProtocolUnit> response = handleRequest(request);
                 if (response.isPresent()) {
                     port.send(response.get());
                     logResponse(response.get());
@@ -94,16 +149,44 @@ public class ClientThread {
         }
     }
 
+    // The answer to a tagged request carries the same tag, so clients can pipeline requests and still match answers
+    private Optional<ProtocolUnit> handleRequest(ProtocolUnit request) {
+        if (!(request instanceof TaggedUnit taggedUnit))
+            return request.accept(client);
+
+        return taggedUnit.unit().accept(client)
+                .map(response -> new TaggedUnit(taggedUnit.tag(), response));
+    }
+
     private void logRequest(ProtocolUnit request) {
+        if (!server.getConfig().isLogUnits())
+            return;
+
         LocalDateTime now = LocalDateTime.now();
         System.out.printf("[%s - %s] < %s\n", now, client, request.serialize());
     }
 
     private void logResponse(ProtocolUnit response) {
+        if (!server.getConfig().isLogUnits())
+            return;
+
         LocalDateTime now = LocalDateTime.now();
         System.out.printf("[%s - %s] > %s\n", now, client, response.serialize());
     }
 
+    private void logResponse(Message message) {
+        if (!server.getConfig().isLogUnits())
+            return;
+
+        LocalDateTime now = LocalDateTime.now();
+        System.out.printf("[%s - %s] > %s\n", now, client, message.getRecvLine());
+    }
+
+    private void logOverflow(String action) {
+        LocalDateTime now = LocalDateTime.now();
+        System.out.printf("[%s - %s] Outbound queue overflow, %s (%s)\n", now, client, action, server.getOverflowCounters());
+    }
+
     private void cleanup() {
         if (done)
             return;
@@ -0,0 +1,71 @@
+package server;
+
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import structs.TokenBucket;
+
+// Send and sync requests have to pass both the bucket of their connection and the one shared by every connection
+// of the same user, so opening more connections does not buy a user more throughput.
+public class RateLimiter {
+    private final ServerConfig config;
+    private final Map<String, Limits> userLimits;
+    private final LongAdder rejected;
+
+    public RateLimiter(ServerConfig config) {
+        this.config = config;
+        this.userLimits = new ConcurrentHashMap<>();
+        this.rejected = new LongAdder();
+    }
+
+    public Limits newLimits() {
+        return new Limits(config);
+    }
+
+    public boolean allowSend(Limits connection, String user) {
+        return allow(connection.send, getUserLimits(user).send);
+    }
+
+    public boolean allowSync(Limits connection, String user) {
+        return allow(connection.sync, getUserLimits(user).sync);
+    }
+
+    public long getRejected() {
+        return rejected.sum();
+    }
+
+    private Limits getUserLimits(String user) {
+        return userLimits.computeIfAbsent(user, key -> new Limits(config));
+    }
+
+    // A connection token taken for a request the user bucket rejects is given back, so a throttled user does not
+    // also drain the budget of their connection
+    private boolean allow(Optional<TokenBucket> connection, Optional<TokenBucket> user) {
+        boolean allowed = connection.map(TokenBucket::tryAcquire).orElse(true);
+        if (allowed && !user.map(TokenBucket::tryAcquire).orElse(true)) {
+            connection.ifPresent(TokenBucket::release);
+            allowed = false;
+        }
+
+        if (!allowed)
+            rejected.increment();
+
+        return allowed;
+    }
+
+    public static class Limits {
+        private final Optional<TokenBucket> send;
+        private final Optional<TokenBucket> sync;
+
+        private Limits(ServerConfig config) {
+            this.send = newBucket(config.getSendRate(), config.getSendBurst());
+            this.sync = newBucket(config.getSyncRate(), config.getSyncBurst());
+        }
+
+        // A rate of 0 disables the limit
+        private static Optional<TokenBucket> newBucket(double rate, int burst) {
+            return rate > 0 ? Optional.of(new TokenBucket(rate, Math.max(1, burst))) : Optional.empty();
+        }
+    }
+}
@@ -2,45 +2,106 @@ package server;
 
 import exception.RoomCreationException;
 import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
 import java.net.ServerSocket;
-import java.net.Socket;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.file.Files;
 import java.nio.file.Path;
-import java.util.HashMap;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+import javax.net.ssl.SSLContext;
+import protocol.KeepaliveService;
 import protocol.ProtocolParser;
 import protocol.ProtocolParserImpl;
 import protocol.ProtocolPort;
-import protocol.SocketProtocolPort;
 import server.client.Guest;
+import server.listener.BlockingListener;
+import server.listener.Listener;
+import server.listener.NioListener;
+import server.listener.UnixListener;
 import server.room.AiRoom;
 import server.room.Room;
+import server.room.RoomImpl;
 import structs.AuthDb;
+import structs.BoundedMessageQueue;
+import structs.ChunkedMessageTable;
+import structs.CursorMessageQueue;
+import structs.DeliveryMode;
+import structs.DurableMessageTable;
 import structs.MessageQueue;
+import structs.MessageTable;
+import structs.MpscMessageQueue;
+import structs.OverflowCounters;
+import structs.Retention;
 import structs.SyncAuthDb;
-import structs.SyncMessageQueue;
 import structs.security.PasswordHasher;
 import structs.security.TokenManager;
 import structs.storage.AuthFileStore;
+import structs.storage.MessageStore;
 import utils.ConfigUtils;
 import utils.SocketUtils;
+import utils.TimerWheel;
 
 public class Server {
     private static final String CONFIG_PATH = "server.properties";
     private static final String USERS_DB_PATH = "users.db";
+    private static final int DEFAULT_ACCEPTORS = 2;
+    private static final int DEFAULT_HANDSHAKE_TIMEOUT = 5000; // ms
+    private static final int TIMER_TICK = 100; // ms
+    private static final int TIMER_WHEEL_SIZE = 512;
+    private static final long MIN_EXPIRE_INTERVAL = 1000; // ms
 
-    private final ServerSocket serverSocket;
+    private final List<Listener> listeners;
+    private final ServerConfig config;
     private final AuthDb authDb;
     private final Map<String, RoomEntry> roomMap;
     private final ProtocolParser parser;
+    private final AtomicInteger nextClientId;
+    private final OverflowCounters overflowCounters;
+    private final RateLimiter rateLimiter;
+    private final Broadcaster broadcaster;
+    private final Optional<MessageStore> messageStore;  // Empty keeps room history in memory only
+    private final ReentrantLock roomLock;  // Serializes room creation, so a room's log is only opened once
 
-    public Server(ServerSocket serverSocket, AuthDb authDb, ProtocolParser parser) {
-        this.serverSocket = serverSocket;
+    public Server(List<Listener> listeners, ServerConfig config, AuthDb authDb, ProtocolParser parser) {
+        this.listeners = listeners;
+        this.config = config;
         this.authDb = authDb;
         this.parser = parser;
-        this.roomMap = new HashMap<>();
+        this.roomMap = new ConcurrentHashMap<>();
+        this.nextClientId = new AtomicInteger(0);
+        this.overflowCounters = new OverflowCounters();
+        this.rateLimiter = new RateLimiter(config);
+        this.broadcaster = new Broadcaster(config.getDelivery(), config.getBroadcastWorkers());
+        this.messageStore = config.getDataDir().map(dir -> new MessageStore(dir.resolve("rooms"), config.getSegmentBytes(),
+                config.getDurability(), config.getFsyncInterval()));
+        this.roomLock = new ReentrantLock();
+    }
+
+    public ServerConfig getConfig() {
+        return config;
+    }
+
+    public OverflowCounters getOverflowCounters() {
+        return overflowCounters;
+    }
+
+    public RateLimiter getRateLimiter() {
+        return rateLimiter;
+    }
+
+    public Broadcaster getBroadcaster() {
+        return broadcaster;
     }
 
     public AuthDb getAuthDb() {
@@ -67,6 +128,54 @@ public class Server {
         return roomMap.putIfAbsent(room.getName(), new RoomEntry(room, isAi)) == null;
     }
 
+    // Returns empty if a room with this name already exists
+    public Optional<Room> createRoom(String roomName) {
+        roomLock.lock();
+        try {
+            if (roomMap.containsKey(roomName))
+                return Optional.empty();
+
+            Room room = new RoomImpl(roomName, newMessageTable(roomName, config.getRetention()), broadcaster);
+            addRoom(room);
+            return Optional.of(room);
+        } finally {
+            roomLock.unlock();
+        }
+    }
+
+    // Retention needs the log to read evicted messages back, without a store rooms keep their whole history.
+    // Durable tables stay locked, since their messages must reach the log in id order.
+    private MessageTable newMessageTable(String roomName, Retention retention) {
+        if (messageStore.isEmpty())
+            return new ChunkedMessageTable();
+
+        try {
+            DurableMessageTable table = DurableMessageTable.open(messageStore.get(), roomName, retention);
+            if (table.size() > 0)
+                System.out.printf("[%s] Recovered %d messages of room %s\n", LocalDateTime.now(), table.size(), roomName);
+            return table;
+        } catch (IOException e) {
+            throw new RoomCreationException("Failed to open the log of room '" + roomName + "': " + e.getMessage());
+        }
+    }
+
+    // Rooms created by clients in earlier runs, AI rooms are created again on their own
+    public void recoverRooms() {
+        if (messageStore.isEmpty())
+            return;
+
+        List<String> names;
+        try {
+            names = messageStore.get().listRooms();
+        } catch (IOException e) {
+            throw new RoomCreationException("Failed to list stored rooms: " + e.getMessage());
+        }
+
+        for (String name : names) {
+            createRoom(name);
+        }
+    }
+
     public void createAIRooms() {
 
         List<String> names = List.of(
@@ -78,9 +187,14 @@ public class Server {
         );
 
         for (String name : names) {
-            Room room = new AiRoom(name.trim());
-            if (!addRoom(room, true)) {
-                throw new RoomCreationException("Failed to assign room '" + name + "' to server");
+            roomLock.lock();
+            try {
+                Room room = new AiRoom(name.trim(), newMessageTable(name.trim(), config.getAiRetention()),
+                        broadcaster);
+                if (!addRoom(room, true))
+                    throw new RoomCreationException("Failed to assign room '" + name + "' to server");
+            } finally {
+                roomLock.unlock();
             }
         }
     }
@@ -96,6 +210,37 @@ public class Server {
                 .toList();
     }
 
+    private void logRoomUsage(long intervalMillis) {
+        Thread.ofVirtual().name("room-stats").start(() -> {
+            try {
+                while (true) {
+                    Thread.sleep(intervalMillis);
+                    for (Room room : getRooms()) {
+                        System.out.printf("[%s] Room %s: %s\n", LocalDateTime.now(), room.getName(), room.getUsage());
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+    }
+
+    // Age limits are otherwise only checked when a message is added, so a quiet room would keep its tail forever
+    private void expireMessages(long intervalMillis) {
+        Thread.ofVirtual().name("room-retention").start(() -> {
+            try {
+                while (true) {
+                    Thread.sleep(intervalMillis);
+                    for (Room room : getRooms()) {
+                        room.expireMessages();
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+    }
+
     public void run() {
         try {
             createAIRooms();
@@ -103,29 +248,61 @@ public class Server {
             System.err.println("Failed to create AI rooms: " + e.getMessage());
         }
 
-        int id = 0;
         try {
-            while (true) {
-                Socket socket = serverSocket.accept();
-                SocketUtils.configureSocket(socket);
+            recoverRooms();
+        } catch (RoomCreationException e) {
+            System.err.println("Failed to recover rooms: " + e.getMessage());
+        }
 
-                ProtocolPort port = new SocketProtocolPort(() -> socket, parser);
-                port.connect();
+        if (config.getBroadcastStatsInterval() > 0)
+            broadcaster.logStats(config.getBroadcastStatsInterval());
+        if (config.getRoomStatsInterval() > 0)
+            logRoomUsage(config.getRoomStatsInterval());
 
-                MessageQueue queue = new SyncMessageQueue();
-                ClientThread clientThread = new ClientThread(id++, this, port, queue, null);
+        long maxAge = config.getRetention().maxAgeMillis();  // Shared by the AI rooms
+        if (messageStore.isPresent() && maxAge > 0)
+            expireMessages(Math.max(MIN_EXPIRE_INTERVAL, maxAge / 8));
 
-                //RoomUser user = room.connectUser(new User(clientThread, "JohnDoe" + new Random().nextInt())).get();
-                Guest user = new Guest(clientThread);
-                clientThread.setClient(user);
+        List<Thread> threads = new ArrayList<>();
+        for (Listener listener : listeners) {
+            threads.add(Thread.ofPlatform().start(() -> {
+                try {
+                    listener.listen(this);
+                } catch (Exception e) {
+                    e.printStackTrace();
+                }
+            }));
+        }
 
-                clientThread.start();
+        try {
+            for (Thread thread : threads) {
+                thread.join();
             }
-        } catch (Exception e) {
-            e.printStackTrace();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
         }
     }
 
+    public void connect(ProtocolPort port) throws IOException {
+        port.connect();
+
+        MessageQueue queue;
+        if (config.getDelivery() == DeliveryMode.CURSOR)
+            queue = new CursorMessageQueue();
+        else if (config.getQueueCapacity() > 0)
+            queue = new BoundedMessageQueue(config.getQueueCapacity(), config.getQueuePolicy(),
+                    config.getQueueBlockTimeout(), overflowCounters);
+        else
+            queue = new MpscMessageQueue();
+        ClientThread clientThread = new ClientThread(nextClientId.getAndIncrement(), this, port, queue, null);
+
+        //RoomUser user = room.connectUser(new User(clientThread, "JohnDoe" + new Random().nextInt())).get();
+        Guest user = new Guest(clientThread);
+        clientThread.setClient(user);
+
+        clientThread.start();
+    }
+
     public static void main(String[] args) {
         Properties config;
         try {
@@ -150,9 +327,79 @@ public class Server {
         String keystorePath = config.getProperty("keystore");
         char[] password = config.getProperty("keystore-password").toCharArray();
 
-        ServerSocket serverSocket;
+        String transport = config.getProperty("transport", "blocking");
+        int eventLoops = ConfigUtils.getIntProperty(config, "event-loops", Runtime.getRuntime().availableProcessors());
+        if (eventLoops < 1) {
+            System.err.printf("Number of event loops must be positive, %d provided.%n", eventLoops);
+            return;
+        }
+
+        int acceptors = ConfigUtils.getIntProperty(config, "acceptors", DEFAULT_ACCEPTORS);
+        if (acceptors < 1) {
+            System.err.printf("Number of acceptors must be positive, %d provided.%n", acceptors);
+            return;
+        }
+
+        int backlog = ConfigUtils.getIntProperty(config, "backlog", SocketUtils.DEFAULT_BACKLOG);
+
+        int plainPort = ConfigUtils.getIntProperty(config, "plain-port", -1);
+        if (plainPort != -1 && (plainPort < 1024 || plainPort > 65535)) {
+            System.err.printf("Plain port number must be between 1024 and 65535, port %d provided.%n", plainPort);
+            return;
+        }
+        String unixSocketPath = config.getProperty("unix-socket");
+        int handshakeTimeout = ConfigUtils.getIntProperty(config, "handshake-timeout", DEFAULT_HANDSHAKE_TIMEOUT);
+
+        int keepaliveInterval = ConfigUtils.getIntProperty(config, "keepalive-interval", KeepaliveService.DEFAULT_INTERVAL);
+        int deadPeerTimeout = ConfigUtils.getIntProperty(config, "dead-peer-timeout",
+                KeepaliveService.DEFAULT_DEAD_PEER_TIMEOUT);
+        if (keepaliveInterval < 1 || deadPeerTimeout <= keepaliveInterval) {
+            System.err.printf("Keepalive interval must be positive and below the dead peer timeout, %d and %d provided.%n",
+                    keepaliveInterval, deadPeerTimeout);
+            return;
+        }
+
+        TimerWheel wheel = new TimerWheel("keepalive", TIMER_TICK, TIMER_WHEEL_SIZE);
+        wheel.start();
+        KeepaliveService keepalive = new KeepaliveService(wheel, keepaliveInterval, deadPeerTimeout);
+
+        ProtocolParser parser = new ProtocolParserImpl();
+
+        List<Listener> listeners = new ArrayList<>();
         try {
-            serverSocket = SocketUtils.newSSLServerSocket(port, password, keystorePath);
+            switch (transport) {
+                case "blocking" -> {
+                    ServerSocket serverSocket = SocketUtils.newSSLServerSocket(port, backlog, password, keystorePath);
+                    listeners.add(new BlockingListener(serverSocket, parser, keepalive, acceptors,
+                            Math.max(0, handshakeTimeout)));
+                }
+                case "nio" -> {
+                    SSLContext sslContext = SocketUtils.newSSLContext(password, keystorePath);
+                    ServerSocketChannel serverChannel = ServerSocketChannel.open();
+                    serverChannel.bind(new InetSocketAddress(port), backlog);
+                    listeners.add(new NioListener(serverChannel, sslContext, parser, keepalive, eventLoops));
+                }
+                default -> {
+                    System.err.printf("Unknown transport '%s', expected 'blocking' or 'nio'.%n", transport);
+                    return;
+                }
+            }
+
+            // Plaintext listeners for clients on this host, external clients always go through TLS
+            if (plainPort != -1) {
+                ServerSocket plainSocket = new ServerSocket(plainPort, backlog, InetAddress.getLoopbackAddress());
+                listeners.add(new BlockingListener(plainSocket, parser, keepalive, 1, 0));
+            }
+
+            if (unixSocketPath != null) {
+                Path socketPath = Path.of(unixSocketPath);
+                Files.deleteIfExists(socketPath);  // Left behind by a previous run
+
+                ServerSocketChannel unixChannel = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+                unixChannel.bind(UnixDomainSocketAddress.of(socketPath), backlog);
+                socketPath.toFile().deleteOnExit();
+                listeners.add(new UnixListener(unixChannel, parser, keepalive));
+            }
         } catch (Exception e) {
             e.printStackTrace();
             return;
@@ -171,10 +418,14 @@ public class Server {
             return;
         }
 
-        ProtocolParser parser = new ProtocolParserImpl();
+        ServerConfig serverConfig = ServerConfig.fromProperties(config);
 
-        Server server = new Server(serverSocket, authDb, parser);
-        System.out.printf("Server started on port %d%n", port);
+        Server server = new Server(listeners, serverConfig, authDb, parser);
+        System.out.printf("Server started on port %d (%s transport)%n", port, transport);
+        if (plainPort != -1)
+            System.out.printf("Accepting plaintext connections on loopback port %d%n", plainPort);
+        if (unixSocketPath != null)
+            System.out.printf("Accepting connections on Unix socket %s%n", unixSocketPath);
 
         server.run();
     }
@@ -0,0 +1,221 @@
+package server;
+
+import java.nio.file.Path;
+import java.util.Optional;
+import java.util.Properties;
+import structs.DeliveryMode;
+import structs.OverflowPolicy;
+import structs.Retention;
+import structs.storage.Durability;
+import utils.ConfigUtils;
+
+public class ServerConfig {
+    private static final int DEFAULT_BATCH_SIZE = 64;
+    private static final int DEFAULT_BATCH_DELAY = 0; // ms
+    private static final int DEFAULT_QUEUE_CAPACITY = 10000;
+    private static final OverflowPolicy DEFAULT_QUEUE_POLICY = OverflowPolicy.RESYNC;
+    private static final int DEFAULT_QUEUE_BLOCK_TIMEOUT = 1000; // ms
+    private static final int DEFAULT_SEND_RATE = 20; // per second
+    private static final int DEFAULT_SEND_BURST = 40;
+    private static final int DEFAULT_SYNC_RATE = 2; // per second
+    private static final int DEFAULT_SYNC_BURST = 10;
+    private static final boolean DEFAULT_LOG_UNITS = true;
+    private static final DeliveryMode DEFAULT_DELIVERY = DeliveryMode.QUEUE;
+    private static final int DEFAULT_BROADCAST_WORKERS = Runtime.getRuntime().availableProcessors();
+    private static final int DEFAULT_BROADCAST_STATS_INTERVAL = 0; // ms
+    private static final int DEFAULT_SEGMENT_BYTES = 8 << 20;
+    private static final int MIN_SEGMENT_BYTES = 4096;
+    private static final Durability DEFAULT_DURABILITY = Durability.GROUP;
+    private static final int DEFAULT_FSYNC_INTERVAL = 1000; // ms
+    private static final int DEFAULT_HOT_MESSAGES = 10000;
+    private static final long DEFAULT_HOT_BYTES = 0;
+    private static final long DEFAULT_HOT_AGE = 0; // ms
+    private static final int DEFAULT_AI_HOT_MESSAGES = 64;
+    private static final int DEFAULT_ROOM_STATS_INTERVAL = 0; // ms
+
+    private final int batchSize;
+    private final int batchDelay;
+    private final int queueCapacity;
+    private final OverflowPolicy queuePolicy;
+    private final int queueBlockTimeout;
+    private final int sendRate;
+    private final int sendBurst;
+    private final int syncRate;
+    private final int syncBurst;
+    private final boolean logUnits;
+    private final DeliveryMode delivery;
+    private final int broadcastWorkers;
+    private final int broadcastStatsInterval;
+    private final Optional<Path> dataDir;
+    private final int segmentBytes;
+    private final Durability durability;
+    private final int fsyncInterval;
+    private final Retention retention;
+    private final Retention aiRetention;
+    private final int roomStatsInterval;
+
+    public ServerConfig(int batchSize, int batchDelay, int queueCapacity, OverflowPolicy queuePolicy, int queueBlockTimeout,
+            int sendRate, int sendBurst, int syncRate, int syncBurst, boolean logUnits, DeliveryMode delivery,
+            int broadcastWorkers, int broadcastStatsInterval, Optional<Path> dataDir, int segmentBytes,
+            Durability durability, int fsyncInterval, Retention retention, Retention aiRetention, int roomStatsInterval) {
+        this.batchSize = batchSize;
+        this.batchDelay = batchDelay;
+        this.queueCapacity = queueCapacity;
+        this.queuePolicy = queuePolicy;
+        this.queueBlockTimeout = queueBlockTimeout;
+        this.sendRate = sendRate;
+        this.sendBurst = sendBurst;
+        this.syncRate = syncRate;
+        this.syncBurst = syncBurst;
+        this.logUnits = logUnits;
+        this.delivery = delivery;
+        this.broadcastWorkers = broadcastWorkers;
+        this.broadcastStatsInterval = broadcastStatsInterval;
+        this.dataDir = dataDir;
+        this.segmentBytes = segmentBytes;
+        this.durability = durability;
+        this.fsyncInterval = fsyncInterval;
+        this.retention = retention;
+        this.aiRetention = aiRetention;
+        this.roomStatsInterval = roomStatsInterval;
+    }
+
+    public static ServerConfig fromProperties(Properties properties) {
+        int batchSize = ConfigUtils.getIntProperty(properties, "batch-size", DEFAULT_BATCH_SIZE);
+        int batchDelay = ConfigUtils.getIntProperty(properties, "batch-delay", DEFAULT_BATCH_DELAY);
+
+        int queueCapacity = ConfigUtils.getIntProperty(properties, "queue-capacity", DEFAULT_QUEUE_CAPACITY);
+        OverflowPolicy queuePolicy = OverflowPolicy.fromString(properties.getProperty("queue-policy", ""))
+                .orElse(DEFAULT_QUEUE_POLICY);
+        int queueBlockTimeout = ConfigUtils.getIntProperty(properties, "queue-block-timeout", DEFAULT_QUEUE_BLOCK_TIMEOUT);
+
+        int sendRate = ConfigUtils.getIntProperty(properties, "send-rate", DEFAULT_SEND_RATE);
+        int sendBurst = ConfigUtils.getIntProperty(properties, "send-burst", DEFAULT_SEND_BURST);
+        int syncRate = ConfigUtils.getIntProperty(properties, "sync-rate", DEFAULT_SYNC_RATE);
+        int syncBurst = ConfigUtils.getIntProperty(properties, "sync-burst", DEFAULT_SYNC_BURST);
+
+        boolean logUnits = ConfigUtils.getBooleanProperty(properties, "log-units", DEFAULT_LOG_UNITS);
+        DeliveryMode delivery = DeliveryMode.fromString(properties.getProperty("delivery", ""))
+                .orElse(DEFAULT_DELIVERY);
+        int broadcastWorkers = ConfigUtils.getIntProperty(properties, "broadcast-workers", DEFAULT_BROADCAST_WORKERS);
+        int broadcastStatsInterval = ConfigUtils.getIntProperty(properties, "broadcast-stats-interval",
+                DEFAULT_BROADCAST_STATS_INTERVAL);
+
+        Optional<Path> dataDir = Optional.ofNullable(properties.getProperty("data-dir"))
+                .map(String::strip)
+                .filter(dir -> !dir.isEmpty())
+                .map(Path::of);
+        int segmentBytes = ConfigUtils.getIntProperty(properties, "segment-bytes", DEFAULT_SEGMENT_BYTES);
+        Durability durability = Durability.fromString(properties.getProperty("durability", ""))
+                .orElse(DEFAULT_DURABILITY);
+        int fsyncInterval = ConfigUtils.getIntProperty(properties, "fsync-interval", DEFAULT_FSYNC_INTERVAL);
+
+        int hotMessages = ConfigUtils.getIntProperty(properties, "hot-messages", DEFAULT_HOT_MESSAGES);
+        long hotBytes = ConfigUtils.getLongProperty(properties, "hot-bytes", DEFAULT_HOT_BYTES);
+        long hotAge = ConfigUtils.getLongProperty(properties, "hot-age", DEFAULT_HOT_AGE);
+        int aiHotMessages = ConfigUtils.getIntProperty(properties, "ai-hot-messages", DEFAULT_AI_HOT_MESSAGES);
+        Retention retention = new Retention(Math.max(0, hotMessages), Math.max(0, hotBytes), Math.max(0, hotAge));
+        Retention aiRetention = new Retention(Math.max(0, aiHotMessages), retention.maxBytes(), retention.maxAgeMillis());
+        int roomStatsInterval = ConfigUtils.getIntProperty(properties, "room-stats-interval",
+                DEFAULT_ROOM_STATS_INTERVAL);
+
+        return new ServerConfig(Math.max(1, batchSize), Math.max(0, batchDelay),
+                Math.max(0, queueCapacity), queuePolicy, Math.max(0, queueBlockTimeout),
+                Math.max(0, sendRate), Math.max(1, sendBurst), Math.max(0, syncRate), Math.max(1, syncBurst),
+                logUnits, delivery, Math.max(0, broadcastWorkers), Math.max(0, broadcastStatsInterval),
+                dataDir, Math.max(MIN_SEGMENT_BYTES, segmentBytes), durability, Math.max(1, fsyncInterval),
+                retention, aiRetention, Math.max(0, roomStatsInterval));
+    }
+
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    public int getBatchDelay() {
+        return batchDelay;
+    }
+
+    // A capacity of 0 means the outbound queues are unbounded
+    public int getQueueCapacity() {
+        return queueCapacity;
+    }
+
+    public OverflowPolicy getQueuePolicy() {
+        return queuePolicy;
+    }
+
+    public int getQueueBlockTimeout() {
+        return queueBlockTimeout;
+    }
+
+    // Rates are in requests per second, 0 disables the limit
+    public int getSendRate() {
+        return sendRate;
+    }
+
+    public int getSendBurst() {
+        return sendBurst;
+    }
+
+    public int getSyncRate() {
+        return syncRate;
+    }
+
+    public int getSyncBurst() {
+        return syncBurst;
+    }
+
+    // Whether every unit sent and received is printed, which costs a serialization per unit
+    public boolean isLogUnits() {
+        return logUnits;
+    }
+
+    // With cursor delivery the queue capacity and policy do not apply, nothing is queued per message
+    public DeliveryMode getDelivery() {
+        return delivery;
+    }
+
+    // With no workers, messages are handed to the members on the sender's thread
+    public int getBroadcastWorkers() {
+        return broadcastWorkers;
+    }
+
+    // 0 disables logging the fan-out latency
+    public int getBroadcastStatsInterval() {
+        return broadcastStatsInterval;
+    }
+
+    // Where room history is kept across restarts, empty keeps it in memory only
+    public Optional<Path> getDataDir() {
+        return dataDir;
+    }
+
+    // Size at which a room log starts a new segment file
+    public int getSegmentBytes() {
+        return segmentBytes;
+    }
+
+    public Durability getDurability() {
+        return durability;
+    }
+
+    // How often logs are forced to disk with INTERVAL durability
+    public int getFsyncInterval() {
+        return fsyncInterval;
+    }
+
+    // Heap retention of room history, only applies with a data directory to read older messages back from
+    public Retention getRetention() {
+        return retention;
+    }
+
+    // AI rooms only ever read their last few messages
+    public Retention getAiRetention() {
+        return aiRetention;
+    }
+
+    // 0 disables logging the memory used by each room
+    public int getRoomStatsInterval() {
+        return roomStatsInterval;
+    }
+}
@@ -3,7 +3,6 @@ package server.client;
 import java.util.Optional;
 import protocol.ProtocolErrorIdentifier;
 import protocol.ProtocolOkIdentifier;
-import protocol.ProtocolUtils;
 import protocol.unit.TokenLoginUnit;
 import protocol.unit.ErrUnit;
 import protocol.unit.LoginUnit;
@@ -34,7 +33,7 @@ public class Guest extends Client {
 
         ProtocolUnit response = new OkUnit(
             ProtocolOkIdentifier.LOGIN,
-            ProtocolUtils.escapeToken(token + "\n" + username)
+            token + "\n" + username
         );
         return Optional.of(response);
     }
@@ -55,7 +54,7 @@ public class Guest extends Client {
 
         ProtocolUnit response = new OkUnit(
             ProtocolOkIdentifier.REGISTER,
-            ProtocolUtils.escapeToken(token + "\n" + username)
+            token + "\n" + username
         );
         return Optional.of(response);
     }
@@ -76,7 +75,7 @@ public class Guest extends Client {
 
         ProtocolUnit response = new OkUnit(
             ProtocolOkIdentifier.LOGIN,
-            ProtocolUtils.escapeToken(token + "\n" + username)
+            token + "\n" + username
         );
         return Optional.of(response);
     }
@@ -4,11 +4,15 @@ import java.util.List;
 import java.util.Optional;
 
 import exception.NotInRoomException;
+import exception.StorageException;
+import protocol.ProtocolErrorIdentifier;
 import protocol.ProtocolOkIdentifier;
+import protocol.unit.ErrUnit;
 import protocol.unit.LeaveUnit;
 import protocol.unit.LogoutUnit;
 import protocol.unit.OkUnit;
 import protocol.unit.ProtocolUnit;
+import protocol.unit.SendBatchUnit;
 import protocol.unit.SendUnit;
 import protocol.unit.SyncUnit;
 import server.ClientThread;
@@ -43,22 +47,61 @@ public class RoomUser extends Client {
 
     @Override
     public Optional<ProtocolUnit> visit(SendUnit unit) {
-        Message message = room.addMessage(unit.message(), this);
+        if (!getThread().allowSend(name))
+            return Optional.of(new ErrUnit(ProtocolErrorIdentifier.RATE_LIMITED));
 
-        for (RoomUser user: room.getOnlineUsers()) {
-            MessageQueue userQueue = user.getThread().getMessageQueue();
-            userQueue.push(message);
+        return post(unit.message());
+    }
+
+    // Each message is rate limited on its own, the ones after the first rejected message are dropped
+    @Override
+    public Optional<ProtocolUnit> visit(SendBatchUnit unit) {
+        for (String content : unit.messages()) {
+            if (!getThread().allowSend(name))
+                return Optional.of(new ErrUnit(ProtocolErrorIdentifier.RATE_LIMITED));
+
+            Optional<ProtocolUnit> error = post(content);
+            if (error.isPresent())
+                return error;
         }
 
         return Optional.empty();
     }
 
+    // A message that could not be stored is not delivered either
+    private Optional<ProtocolUnit> post(String content) {
+        if (!Message.fitsFrame(name, content))  // Its recv frame would be rejected by every reader
+            return Optional.of(new ErrUnit(ProtocolErrorIdentifier.TOO_LONG));
+
+        try {
+            room.addMessage(content, this);
+            return Optional.empty();
+        } catch (StorageException e) {
+            e.printStackTrace();
+            return Optional.of(new ErrUnit(ProtocolErrorIdentifier.STORAGE));
+        }
+    }
+
     @Override
     public Optional<ProtocolUnit> visit(SyncUnit unit) {
+        if (!getThread().allowSync(name))
+            return Optional.of(new ErrUnit(ProtocolErrorIdentifier.RATE_LIMITED));
+
         MessageQueue queue = getThread().getMessageQueue();
 
         int lastId = unit.vectorClock();
-        List<Message> missingMessages = room.getMessages(lastId + 1);
+        if (queue.isCursor()) {
+            queue.seek(lastId + 1);
+            return Optional.empty();
+        }
+
+        List<Message> missingMessages;
+        try {
+            missingMessages = room.getMessages(lastId + 1);  // Older ones may be read back from the log
+        } catch (StorageException e) {
+            e.printStackTrace();
+            return Optional.of(new ErrUnit(ProtocolErrorIdentifier.STORAGE));
+        }
 
         queue.pushAll(missingMessages);
 
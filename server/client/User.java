@@ -6,7 +6,6 @@ import java.util.List;
 import java.util.Optional;
 import protocol.ProtocolErrorIdentifier;
 import protocol.ProtocolOkIdentifier;
-import protocol.ProtocolUtils;
 import protocol.unit.EnterUnit;
 import protocol.unit.ErrUnit;
 import protocol.unit.ListRoomsUnit;
@@ -17,7 +16,6 @@ import server.ClientThread;
 import server.Server;
 import server.room.AiRoom;
 import server.room.Room;
-import server.room.RoomImpl;
 
 public class User extends Client {
     private final String name;
@@ -55,7 +53,7 @@ public class User extends Client {
                 .map(Room::getName)
                 .toList();
 
-        String data = ProtocolUtils.escapeToken(String.join("\n", roomNames) + "\n\n" + String.join("\n", aiRoomNames));
+        String data = String.join("\n", roomNames) + "\n\n" + String.join("\n", aiRoomNames);
 
         return Optional.of(new OkUnit(ProtocolOkIdentifier.LIST_ROOMS, data));
     }
@@ -73,10 +71,15 @@ public class User extends Client {
             room = optRoom.get();
             responseId = ProtocolOkIdentifier.ENTER_ROOM;
         } else {
-            room = new RoomImpl(unit.roomName());
-            if (!server.addRoom(room))
-                throw new RoomCreationException("Failed to assign room to server");
-            responseId = ProtocolOkIdentifier.CREATE_ROOM;
+            Optional<Room> newRoom = server.createRoom(unit.roomName());
+            if (newRoom.isPresent()) {
+                room = newRoom.get();
+                responseId = ProtocolOkIdentifier.CREATE_ROOM;
+            } else {  // Created by another client in the meantime
+                room = server.getRoom(unit.roomName())
+                        .orElseThrow(() -> new RoomCreationException("Failed to assign room to server"));
+                responseId = ProtocolOkIdentifier.ENTER_ROOM;
+            }
         }
 
         Optional<RoomUser> newUser = room.connectUser(this);
@@ -87,7 +90,7 @@ public class User extends Client {
 
         String roomName = room.getName();
         boolean aiRoom = room instanceof AiRoom;
-        String info = ProtocolUtils.escapeToken(roomName + "\n" + (aiRoom ? "ai" : "normal"));
+        String info = roomName + "\n" + (aiRoom ? "ai" : "normal");
 
         return Optional.of(new OkUnit(responseId, info));
     }
@@ -0,0 +1,46 @@
+package server.listener;
+
+import java.util.concurrent.atomic.LongAdder;
+
+public class AcceptCounters {
+    private final LongAdder accepted;
+    private final LongAdder acceptFailures;
+    private final LongAdder handshakeFailures;
+
+    public AcceptCounters() {
+        this.accepted = new LongAdder();
+        this.acceptFailures = new LongAdder();
+        this.handshakeFailures = new LongAdder();
+    }
+
+    public void addAccepted() {
+        accepted.increment();
+    }
+
+    public void addAcceptFailure() {
+        acceptFailures.increment();
+    }
+
+    public void addHandshakeFailure() {
+        handshakeFailures.increment();
+    }
+
+    public long getAccepted() {
+        return accepted.sum();
+    }
+
+    public long getAcceptFailures() {
+        return acceptFailures.sum();
+    }
+
+    // Handshakes that failed or did not finish within the timeout
+    public long getHandshakeFailures() {
+        return handshakeFailures.sum();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%d accepted, %d accept failures, %d handshake failures",
+                getAccepted(), getAcceptFailures(), getHandshakeFailures());
+    }
+}
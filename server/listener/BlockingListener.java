@@ -0,0 +1,111 @@
+package server.listener;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.time.LocalDateTime;
+import javax.net.ssl.SSLSocket;
+import protocol.KeepaliveService;
+import protocol.ProtocolParser;
+import protocol.ProtocolPort;
+import protocol.SocketConnection;
+import protocol.SocketProtocolPort;
+import server.Server;
+import utils.SocketUtils;
+
+public class BlockingListener implements Listener {
+    private static final int ACCEPT_BACKOFF = 100; // ms, e.g. while out of file descriptors
+
+    private final ServerSocket serverSocket;
+    private final ProtocolParser parser;
+    private final KeepaliveService keepalive;
+    private final int acceptors;
+    private final int handshakeTimeout;
+    private final AcceptCounters counters;
+
+    public BlockingListener(ServerSocket serverSocket, ProtocolParser parser, KeepaliveService keepalive, int acceptors,
+            int handshakeTimeout) {
+        this.serverSocket = serverSocket;
+        this.parser = parser;
+        this.keepalive = keepalive;
+        this.acceptors = acceptors;
+        this.handshakeTimeout = handshakeTimeout;
+        this.counters = new AcceptCounters();
+    }
+
+    public AcceptCounters getCounters() {
+        return counters;
+    }
+
+    @Override
+    public void listen(Server server) throws IOException {
+        Thread[] threads = new Thread[acceptors];
+        for (int i = 0; i < acceptors; i++) {
+            threads[i] = Thread.ofPlatform().name("acceptor-" + i).start(() -> accept(server));
+        }
+
+        try {
+            for (Thread thread : threads) {
+                thread.join();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void accept(Server server) {
+        while (!serverSocket.isClosed()) {
+            Socket socket;
+            try {
+                socket = serverSocket.accept();
+            } catch (IOException e) {
+                if (serverSocket.isClosed())
+                    return;
+
+                counters.addAcceptFailure();
+                log("Accept failed: " + e.getMessage());
+                backoff();
+                continue;
+            }
+
+            counters.addAccepted();
+
+            // The accept loop never waits on a slow or malicious peer
+            Thread.ofVirtual().start(() -> handshake(server, socket));
+        }
+    }
+
+    private void handshake(Server server, Socket socket) {
+        try {
+            socket.setSoTimeout(handshakeTimeout);
+            if (socket instanceof SSLSocket sslSocket)
+                sslSocket.startHandshake();
+            SocketUtils.configureSocket(socket);
+
+            ProtocolPort port = new SocketProtocolPort(() -> new SocketConnection(socket), parser, keepalive);
+            server.connect(port);
+        } catch (IOException e) {
+            counters.addHandshakeFailure();
+            log("Handshake with " + socket.getRemoteSocketAddress() + " failed: " + e.getMessage());
+
+            try {
+                socket.close();
+            } catch (IOException e2) {
+                // Already closed
+            }
+        }
+    }
+
+    private void log(String message) {
+        LocalDateTime now = LocalDateTime.now();
+        System.out.printf("[%s] %s (%s)\n", now, message, counters);
+    }
+
+    private static void backoff() {
+        try {
+            Thread.sleep(ACCEPT_BACKOFF);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,8 @@
+package server.listener;
+
+import java.io.IOException;
+import server.Server;
+
+public interface Listener {
+    void listen(Server server) throws IOException;
+}
@@ -0,0 +1,35 @@
+package server.listener;
+
+import java.io.IOException;
+import protocol.MemoryProtocolPort;
+import protocol.ProtocolParser;
+import protocol.ProtocolPort;
+import server.Server;
+
+// Hands out in-process connections to the server, e.g. to drive thousands of clients from a benchmark
+public class MemoryListener implements Listener {
+    private final ProtocolParser parser;
+    private final boolean serialize;
+    private volatile Server server;
+
+    public MemoryListener(ProtocolParser parser, boolean serialize) {
+        this.parser = parser;
+        this.serialize = serialize;
+    }
+
+    @Override
+    public void listen(Server server) {
+        this.server = server;
+    }
+
+    // Returns the client end of a new connection, the server end is already being served
+    public ProtocolPort connect() throws IOException {
+        Server server = this.server;
+        if (server == null)
+            throw new IllegalStateException("Server is not running");
+
+        MemoryProtocolPort.Pair pair = serialize ? MemoryProtocolPort.newPair(parser) : MemoryProtocolPort.newPair();
+        server.connect(pair.server());
+        return pair.client();
+    }
+}
@@ -0,0 +1,104 @@
+package server.listener;
+
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLSession;
+import protocol.KeepaliveService;
+import protocol.ProtocolParser;
+import protocol.nio.EventLoop;
+import protocol.nio.NioProtocolPort;
+import server.Server;
+
+public class NioListener implements Listener {
+    private static final int ACCEPT_BACKOFF = 100; // ms, e.g. while out of file descriptors
+
+    private final ServerSocketChannel serverChannel;
+    private final SSLContext sslContext;
+    private final ProtocolParser parser;
+    private final KeepaliveService keepalive;
+    private final EventLoop[] loops;
+    private final AcceptCounters counters;
+
+    public NioListener(ServerSocketChannel serverChannel, SSLContext sslContext, ProtocolParser parser,
+            KeepaliveService keepalive, int loopCount) throws IOException {
+        this.serverChannel = serverChannel;
+        this.sslContext = sslContext;
+        this.parser = parser;
+        this.keepalive = keepalive;
+        this.counters = new AcceptCounters();
+
+        SSLSession session = sslContext.createSSLEngine().getSession();
+        int packetSize = session.getPacketBufferSize();
+        int appSize = session.getApplicationBufferSize();
+
+        this.loops = new EventLoop[loopCount];
+        for (int i = 0; i < loopCount; i++) {
+            loops[i] = new EventLoop("event-loop-" + i, packetSize, appSize);
+        }
+    }
+
+    public AcceptCounters getCounters() {
+        return counters;
+    }
+
+    @Override
+    public void listen(Server server) throws IOException {
+        for (EventLoop loop : loops) {
+            loop.start();
+        }
+
+        // Handshakes run on the event loops, so a single acceptor is never held up by a peer
+        int next = 0;
+        while (serverChannel.isOpen()) {
+            SocketChannel channel;
+            try {
+                channel = serverChannel.accept();
+            } catch (IOException e) {
+                if (!serverChannel.isOpen())
+                    return;
+
+                counters.addAcceptFailure();
+                log("Accept failed: " + e.getMessage());
+                backoff();
+                continue;
+            }
+
+            counters.addAccepted();
+
+            try {
+                channel.configureBlocking(false);
+
+                SSLEngine engine = sslContext.createSSLEngine();
+                engine.setUseClientMode(false);
+
+                EventLoop loop = loops[next];
+                next = (next + 1) % loops.length;
+
+                NioProtocolPort port = new NioProtocolPort(channel, engine, loop, parser, keepalive);
+                loop.register(port);
+                server.connect(port);
+            } catch (IOException e) {
+                counters.addHandshakeFailure();
+                log("Connection setup failed: " + e.getMessage());
+                channel.close();
+            }
+        }
+    }
+
+    private void log(String message) {
+        LocalDateTime now = LocalDateTime.now();
+        System.out.printf("[%s] %s (%s)\n", now, message, counters);
+    }
+
+    private static void backoff() {
+        try {
+            Thread.sleep(ACCEPT_BACKOFF);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package server.listener;
+
+import java.io.IOException;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.time.LocalDateTime;
+import protocol.ChannelConnection;
+import protocol.KeepaliveService;
+import protocol.ProtocolParser;
+import protocol.ProtocolPort;
+import protocol.SocketProtocolPort;
+import server.Server;
+
+// Plaintext Unix domain socket, only reachable by processes on this host
+public class UnixListener implements Listener {
+    private static final int ACCEPT_BACKOFF = 100; // ms, e.g. while out of file descriptors
+
+    private final ServerSocketChannel serverChannel;
+    private final ProtocolParser parser;
+    private final KeepaliveService keepalive;
+    private final AcceptCounters counters;
+
+    public UnixListener(ServerSocketChannel serverChannel, ProtocolParser parser, KeepaliveService keepalive) {
+        this.serverChannel = serverChannel;
+        this.parser = parser;
+        this.keepalive = keepalive;
+        this.counters = new AcceptCounters();
+    }
+
+    public AcceptCounters getCounters() {
+        return counters;
+    }
+
+    @Override
+    public void listen(Server server) throws IOException {
+        while (serverChannel.isOpen()) {
+            SocketChannel channel;
+            try {
+                channel = serverChannel.accept();
+            } catch (IOException e) {
+                if (!serverChannel.isOpen())
+                    return;
+
+                counters.addAcceptFailure();
+                log("Accept failed: " + e.getMessage());
+                backoff();
+                continue;
+            }
+
+            counters.addAccepted();
+
+            ProtocolPort port = new SocketProtocolPort(() -> new ChannelConnection(channel), parser, keepalive);
+            try {
+                server.connect(port);
+            } catch (IOException e) {
+                log("Connection setup failed: " + e.getMessage());
+                channel.close();
+            }
+        }
+    }
+
+    private void log(String message) {
+        LocalDateTime now = LocalDateTime.now();
+        System.out.printf("[%s] %s (%s)\n", now, message, counters);
+    }
+
+    private static void backoff() {
+        try {
+            Thread.sleep(ACCEPT_BACKOFF);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -5,36 +5,36 @@ import java.net.URI;
 import java.net.http.HttpClient;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
 import java.util.Optional;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import protocol.ProtocolUtils;
+import server.Broadcaster;
 import server.client.RoomUser;
 import server.client.User;
 import structs.Message;
-import structs.MessageQueue;
 import structs.MessageTable;
-import structs.SyncMessageTable;
+import structs.TableUsage;
 
 public class AiRoom implements Room {
     // Number of messages to give to Ollama for context
     private static final int CONTEXT_WINDOW = 8;
 
     private final String name;
-    private final Map<String, RoomUser> userMap;
+    private final RoomMembers<String> members;  // Keyed by username
     private final MessageTable messageTable;
     private final BlockingQueue<Runnable> taskQueue;
     private final RoomUser bot;
+    private final RoomPublisher publisher;
 
-    public AiRoom(String name) {
+    public AiRoom(String name, MessageTable messageTable, Broadcaster broadcaster) {
         this.name = name;
-        this.userMap = new HashMap<>();
-        this.messageTable = new SyncMessageTable();
+        this.members = new RoomMembers<>(RoomUser::getName, broadcaster.getShardCount());
+        this.messageTable = messageTable;
+        this.publisher = new RoomPublisher(messageTable, broadcaster, members);
         this.taskQueue = new LinkedBlockingQueue<>();
         this.bot = new RoomUser(null, "Bot", this, null);
 
@@ -45,7 +45,11 @@ public class AiRoom implements Room {
         try {
             while (true) {
                 Runnable task = taskQueue.take();
-                task.run();
+                try {
+                    task.run();
+                } catch (RuntimeException e) {  // A reply that failed, e.g. to be stored, must not stop the room's worker
+                    e.printStackTrace();
+                }
             }
 
         } catch (InterruptedException e) {
@@ -60,17 +64,16 @@ public class AiRoom implements Room {
 
     @Override
     public List<RoomUser> getOnlineUsers() {
-        return userMap.values().stream().toList();
+        return members.users();
     }
 
     @Override
     public Optional<RoomUser> connectUser(User user) {
-        RoomUser currentUser = userMap.get(user.getName());
-        if (currentUser != null)
-            return Optional.of(currentUser);
-
         RoomUser newUser = new RoomUser(user.getThread(), user.getName(), this, user.getToken());
-        userMap.put(newUser.getName(), newUser);
+        RoomUser currentUser = members.addIfAbsent(newUser);
+        if (currentUser != newUser)
+            return Optional.of(currentUser);
+        newUser.getThread().getMessageQueue().follow(messageTable);
 
         var content = String.format("Hi, %s! Welcome to the AI room %s! You can start chatting with me.", newUser.getName(), this.name);
         newUser.getThread().getMessageQueue().push(new Message(-1, "Bot", content));
@@ -80,9 +83,10 @@ public class AiRoom implements Room {
 
     @Override
     public Optional<User> disconnectUser(RoomUser user) {
-        RoomUser removedUser = userMap.remove(user.getName());
+        RoomUser removedUser = members.remove(user);
         if (removedUser == null)
             return Optional.empty();
+        removedUser.getThread().getMessageQueue().follow(null);
 
         User newUser = new User(user.getThread(), user.getName(), user.getToken());
         return Optional.of(newUser);
@@ -90,12 +94,12 @@ public class AiRoom implements Room {
 
     @Override
     public Message addMessage(String content, RoomUser author) {
-        Message message = messageTable.add(author, content);
+        Message message = publish(author, content);
         String prompt = buildPrompt();
 
         taskQueue.add(() -> {
             String aiResponse = getAiResponse(prompt);
-            if (aiResponse != null) {
+            if (aiResponse != null && Message.fitsFrame(bot.getName(), aiResponse)) {
                 broadcastMessage(aiResponse);
             }
         });
@@ -113,6 +117,16 @@ public class AiRoom implements Room {
         return messageTable.getFrom(firstId);
     }
 
+    @Override
+    public TableUsage getUsage() {
+        return messageTable.usage();
+    }
+
+    @Override
+    public void expireMessages() {
+        messageTable.expire();
+    }
+
     private String getAiResponse(String prompt) {
         try {
             String jsonBody = """
@@ -171,11 +185,10 @@ public class AiRoom implements Room {
     }
 
     private void broadcastMessage(String content) {
-        Message message = messageTable.add(bot, content);
+        publish(bot, content);
+    }
 
-        for (RoomUser user : getOnlineUsers()) {
-            MessageQueue userQueue = user.getThread().getMessageQueue();
-            userQueue.push(message);
-        }
+    private Message publish(RoomUser author, String content) {
+        return publisher.publish(author, content);
     }
 }
@@ -6,6 +6,7 @@ import java.util.Optional;
 import server.client.RoomUser;
 import server.client.User;
 import structs.Message;
+import structs.TableUsage;
 
 public interface Room {
     String getName();
@@ -14,7 +15,9 @@ public interface Room {
     Optional<RoomUser> connectUser(User user);
     Optional<User> disconnectUser(RoomUser user);
 
-    Message addMessage(String content, RoomUser author);
+    Message addMessage(String content, RoomUser author);  // Also hands the message to the members
     List<Message> getMessages();
     List<Message> getMessages(int firstId);
+    TableUsage getUsage();
+    void expireMessages();  // Applies the age limit of the retention
 }
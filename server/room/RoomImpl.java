@@ -1,24 +1,25 @@
 package server.room;
 
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
 import java.util.Optional;
+import server.Broadcaster;
 import server.client.RoomUser;
 import server.client.User;
 import structs.Message;
 import structs.MessageTable;
-import structs.SyncMessageTable;
+import structs.TableUsage;
 
 public class RoomImpl implements Room {
     private final String name;
-    private final Map<Integer, RoomUser> userMap;  // Client thread ID to RoomUser mapping
+    private final RoomMembers<Integer> members;  // Keyed by client thread ID
     private final MessageTable messageTable;
+    private final RoomPublisher publisher;
 
-    public RoomImpl(String name) {
+    public RoomImpl(String name, MessageTable messageTable, Broadcaster broadcaster) {
         this.name = name;
-        this.userMap = new HashMap<>();
-        this.messageTable = new SyncMessageTable();
+        this.members = new RoomMembers<>(user -> user.getThread().getId(), broadcaster.getShardCount());
+        this.messageTable = messageTable;
+        this.publisher = new RoomPublisher(messageTable, broadcaster, members);
     }
 
     @Override
@@ -28,13 +29,14 @@ public class RoomImpl implements Room {
 
     @Override
     public List<RoomUser> getOnlineUsers() {
-        return userMap.values().stream().toList();
+        return members.users();
     }
 
     @Override
     public Optional<RoomUser> connectUser(User user) {
         RoomUser newUser = new RoomUser(user.getThread(), user.getName(), this, user.getToken());
-        userMap.put(newUser.getThread().getId(), newUser);
+        newUser.getThread().getMessageQueue().follow(messageTable);
+        members.put(newUser);
         return Optional.of(newUser);
 
         // Never returns empty because there is no authorization
@@ -42,9 +44,10 @@ public class RoomImpl implements Room {
 
     @Override
     public Optional<User> disconnectUser(RoomUser user) {
-        RoomUser removedUser = userMap.remove(user.getThread().getId());
+        RoomUser removedUser = members.remove(user);
         if (removedUser == null)
             return Optional.empty();
+        removedUser.getThread().getMessageQueue().follow(null);
 
         User newUser = new User(user.getThread(), user.getName(), user.getToken());
         return Optional.of(newUser);
@@ -52,7 +55,7 @@ public class RoomImpl implements Room {
 
     @Override
     public Message addMessage(String content, RoomUser author) {
-        return messageTable.add(author, content);
+        return publisher.publish(author, content);  // Concurrent senders get committed together
     }
 
     @Override
@@ -64,4 +67,14 @@ public class RoomImpl implements Room {
     public List<Message> getMessages(int firstId) {
         return messageTable.getFrom(firstId);
     }
+
+    @Override
+    public TableUsage getUsage() {
+        return messageTable.usage();
+    }
+
+    @Override
+    public void expireMessages() {
+        messageTable.expire();
+    }
 }
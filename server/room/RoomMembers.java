@@ -0,0 +1,109 @@
+package server.room;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+import server.Broadcaster;
+import server.client.RoomUser;
+
+// Copy-on-write set of the users online in a room.
+// Joins and leaves build a new snapshot under a lock, readers only load the current one,
+// so fan-out iterates a ready-made immutable list without locking or copying.
+// The members are also kept split into the broadcaster's shards.
+class RoomMembers<K> {
+    private record Snapshot<K>(Map<K, RoomUser> byKey, List<RoomUser> users, List<List<RoomUser>> shards) {}
+
+    private final Function<RoomUser, K> keyOf;
+    private final int shardCount;
+    private final ReentrantLock lock;
+    private volatile Snapshot<K> snapshot;
+
+    RoomMembers(Function<RoomUser, K> keyOf, int shardCount) {
+        this.keyOf = keyOf;
+        this.shardCount = shardCount;
+        this.lock = new ReentrantLock();
+        this.snapshot = new Snapshot<>(Map.of(), List.of(), split(List.of()));
+    }
+
+    List<RoomUser> users() {
+        return snapshot.users();
+    }
+
+    List<List<RoomUser>> shards() {
+        return snapshot.shards();
+    }
+
+    // Returns the user already registered under the same key, or the given user once added
+    RoomUser addIfAbsent(RoomUser user) {
+        K key = keyOf.apply(user);
+        RoomUser current = snapshot.byKey().get(key);
+        if (current != null)
+            return current;
+
+        lock.lock();
+        try {
+            current = snapshot.byKey().get(key);
+            if (current != null)
+                return current;
+
+            Map<K, RoomUser> byKey = new HashMap<>(snapshot.byKey());
+            byKey.put(key, user);
+            publish(byKey);
+            return user;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    void put(RoomUser user) {
+        lock.lock();
+        try {
+            Map<K, RoomUser> byKey = new HashMap<>(snapshot.byKey());
+            byKey.put(keyOf.apply(user), user);
+            publish(byKey);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Returns the removed user, or null if none was registered under the user's key
+    RoomUser remove(RoomUser user) {
+        K key = keyOf.apply(user);
+        if (!snapshot.byKey().containsKey(key))
+            return null;
+
+        lock.lock();
+        try {
+            if (!snapshot.byKey().containsKey(key))
+                return null;
+
+            Map<K, RoomUser> byKey = new HashMap<>(snapshot.byKey());
+            RoomUser removed = byKey.remove(key);
+            publish(byKey);
+            return removed;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Lock held
+    private void publish(Map<K, RoomUser> byKey) {
+        List<RoomUser> users = List.copyOf(byKey.values());
+        snapshot = new Snapshot<>(byKey, users, split(users));
+    }
+
+    private List<List<RoomUser>> split(List<RoomUser> users) {
+        List<List<RoomUser>> shards = new ArrayList<>(shardCount);
+        for (int i = 0; i < shardCount; i++) {
+            shards.add(new ArrayList<>());
+        }
+
+        for (RoomUser user : users) {
+            shards.get(Broadcaster.shardOf(user, shardCount)).add(user);
+        }
+        return shards.stream().map(List::copyOf).toList();
+    }
+}
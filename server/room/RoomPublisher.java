@@ -0,0 +1,58 @@
+package server.room;
+
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.locks.ReentrantLock;
+import server.Broadcaster;
+import server.client.RoomUser;
+import structs.Message;
+import structs.MessageTable;
+
+// Adds messages to a room's table and hands them to the broadcaster in table order, but only once the table has
+// published them. Durable tables publish after the commit, so members never get a message a crash could take back.
+// Concurrent senders still share a commit: each waits on its own, then sends out every published message so far.
+final class RoomPublisher {
+    private final MessageTable table;
+    private final Broadcaster broadcaster;
+    private final RoomMembers<?> members;
+    private final ReentrantLock lock;  // Keeps the broadcast order the same as the table order
+    private final Queue<Message> pending;  // Added but not broadcast yet, in id order
+
+    RoomPublisher(MessageTable table, Broadcaster broadcaster, RoomMembers<?> members) {
+        this.table = table;
+        this.broadcaster = broadcaster;
+        this.members = members;
+        this.lock = new ReentrantLock();
+        this.pending = new ArrayDeque<>();
+    }
+
+    Message publish(RoomUser author, String content) {
+        Message message;
+        lock.lock();
+        try {
+            message = table.add(author, content);
+            pending.add(message);
+        } finally {
+            lock.unlock();
+        }
+
+        try {
+            table.awaitDurable(message);
+        } finally {
+            broadcastPublished();  // Also on failure, for the messages before it that did get committed
+        }
+        return message;
+    }
+
+    private void broadcastPublished() {
+        lock.lock();
+        try {
+            int published = table.size();
+            while (!pending.isEmpty() && pending.peek().id() < published) {
+                broadcaster.publish(pending.poll(), members.shards());
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+}
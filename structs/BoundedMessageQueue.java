@@ -0,0 +1,229 @@
+package structs;
+
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.Optional;
+import java.util.Queue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+public class BoundedMessageQueue implements MessageQueue {
+    private final Queue<Message> queue;
+    private final int capacity;
+    private final OverflowPolicy policy;
+    private final long blockTimeout;  // ms
+    private final OverflowCounters counters;
+
+    private final ReentrantLock lock;
+    private final Condition notEmpty;
+    private final Condition notFull;
+
+    private boolean closed;
+    private boolean resyncPending;
+
+    public BoundedMessageQueue(int capacity, OverflowPolicy policy, long blockTimeout, OverflowCounters counters) {
+        this.queue = new ArrayDeque<>();
+        this.capacity = capacity;
+        this.policy = policy;
+        this.blockTimeout = blockTimeout;
+        this.counters = counters;
+
+        this.lock = new ReentrantLock();
+        this.notEmpty = lock.newCondition();
+        this.notFull = lock.newCondition();
+
+        this.closed = false;
+        this.resyncPending = false;
+    }
+
+    @Override
+    public void push(Message message) {
+        push(message, true);
+    }
+
+    // With the block policy a full queue is handled like resync, the client catches up with sync
+    @Override
+    public void pushNow(Message message) {
+        push(message, false);
+    }
+
+    private void push(Message message, boolean wait) {
+        lock.lock();
+        try {
+            if (offer(message, wait))
+                return;
+
+            if (policy == OverflowPolicy.RESYNC || (policy == OverflowPolicy.BLOCK && !wait)) {
+                counters.addDropped(queue.size() + 1);
+                counters.addEvicted();
+                queue.clear();
+                resyncPending = true;
+                notEmpty.signalAll();
+                notFull.signalAll();
+            } else {
+                evict(1);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void pushAll(Collection<Message> messages) {
+        lock.lock();
+        try {
+            int pushed = 0;
+            for (Message message : messages) {
+                if (!offer(message, true))
+                    break;
+                pushed++;
+            }
+
+            int remaining = messages.size() - pushed;
+            if (remaining == 0)
+                return;
+
+            if (policy == OverflowPolicy.RESYNC) {
+                // What was queued is contiguous history, so the client resyncs from right after it
+                counters.addDropped(remaining);
+                resyncPending = true;
+                notEmpty.signalAll();
+            } else {
+                evict(remaining);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public Optional<Message> pop() {
+        lock.lock();
+        try {
+            while (queue.isEmpty() && !closed && !resyncPending)
+                notEmpty.await();
+            return poll();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return Optional.empty();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public Optional<Message> pop(long timeoutMillis) {
+        lock.lock();
+        try {
+            long remaining = TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+            while (queue.isEmpty() && !closed && !resyncPending) {
+                if (remaining <= 0)
+                    return Optional.empty();
+                remaining = notEmpty.awaitNanos(remaining);
+            }
+            return poll();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return Optional.empty();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public int drainTo(Collection<Message> out, int max) {
+        lock.lock();
+        try {
+            if (closed)
+                return 0;
+
+            int count = 0;
+            while (count < max && !queue.isEmpty()) {
+                out.add(queue.poll());
+                count++;
+            }
+
+            if (count > 0)
+                notFull.signalAll();
+            return count;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public boolean isClosed() {
+        lock.lock();
+        try {
+            return closed;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public boolean takeResync() {
+        lock.lock();
+        try {
+            // Only signalled once everything still queued has been delivered
+            if (!resyncPending || !queue.isEmpty())
+                return false;
+
+            resyncPending = false;
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Must be called with the lock held
+    private boolean offer(Message message, boolean wait) {
+        if (closed) {
+            counters.addDropped(1);
+            return true;
+        }
+
+        if (wait && queue.size() >= capacity && policy == OverflowPolicy.BLOCK) {
+            long remaining = TimeUnit.MILLISECONDS.toNanos(blockTimeout);
+            try {
+                while (queue.size() >= capacity && !closed && remaining > 0)
+                    remaining = notFull.awaitNanos(remaining);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+
+            if (closed) {
+                counters.addDropped(1);
+                return true;
+            }
+        }
+
+        if (queue.size() >= capacity)
+            return false;
+
+        queue.add(message);
+        notEmpty.signal();
+        return true;
+    }
+
+    // Must be called with the lock held
+    private void evict(int lost) {
+        counters.addDropped(queue.size() + lost);
+        counters.addEvicted();
+        queue.clear();
+        closed = true;
+        notEmpty.signalAll();
+        notFull.signalAll();
+    }
+
+    // Must be called with the lock held
+    private Optional<Message> poll() {
+        if (closed || queue.isEmpty())
+            return Optional.empty();
+
+        Message message = queue.poll();
+        notFull.signal();
+        return Optional.of(message);
+    }
+}
@@ -0,0 +1,174 @@
+package structs;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+import server.client.RoomUser;
+
+// Lock-free table for rooms whose history is kept in memory only. Ids come from an atomic sequence and messages are
+// stored in fixed-size chunks, allocated as the room grows and never copied. A message becomes visible once every
+// lower id is stored too, so readers only ever see a contiguous prefix and read it without waiting.
+public class ChunkedMessageTable implements MessageTable {
+    private static final int CHUNK_SHIFT = 10;
+    private static final int CHUNK_SIZE = 1 << CHUNK_SHIFT;
+    private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+
+    private final AtomicInteger sequence;
+    private final AtomicInteger published;  // Every id below it is stored
+    private volatile AtomicReferenceArray<AtomicReferenceArray<Message>> chunks;
+    private final ReentrantLock growLock;  // Only taken by the sender that needs a new chunk
+    private final LongAdder bytes;
+    private final TableWatchers watchers;
+
+    public ChunkedMessageTable() {
+        this.sequence = new AtomicInteger();
+        this.published = new AtomicInteger();
+        this.chunks = new AtomicReferenceArray<>(16);
+        this.growLock = new ReentrantLock();
+        this.bytes = new LongAdder();
+        this.watchers = new TableWatchers();
+    }
+
+    @Override
+    public Message add(RoomUser user, String content) {
+        int id = sequence.getAndIncrement();
+        Message message = new Message(id, user.getName(), content);
+
+        chunkFor(id).set(id & CHUNK_MASK, message);
+        bytes.add(SyncMessageTable.estimateBytes(message));
+
+        if (publish())
+            watchers.wake();
+        return message;
+    }
+
+    @Override
+    public Optional<Message> get(int id) {
+        if (id < 0 || id >= published.get())
+            return Optional.empty();
+
+        return Optional.of(slot(id));
+    }
+
+    @Override
+    public List<Message> getAll() {
+        return getFrom(0);
+    }
+
+    @Override
+    public List<Message> getFrom(int id) {
+        int end = published.get();
+        if (id < 0 || id >= end)
+            return Collections.emptyList();
+
+        List<Message> messages = new ArrayList<>(end - id);
+        copy(id, end, messages);
+        return Collections.unmodifiableList(messages);
+    }
+
+    @Override
+    public List<Message> getLast(int count) {
+        return getFrom(Math.max(0, published.get() - Math.max(0, count)));
+    }
+
+    @Override
+    public TableUsage usage() {
+        int size = published.get();
+        return new TableUsage(size, bytes.sum(), size);
+    }
+
+    @Override
+    public int size() {
+        return published.get();
+    }
+
+    @Override
+    public int drainFrom(int id, Collection<Message> out, int max) {
+        id = Math.max(0, id);
+        int end = Math.min(published.get(), id + Math.max(0, max));
+        if (id >= end)
+            return 0;
+
+        copy(id, end, out);
+        return end - id;
+    }
+
+    @Override
+    public boolean watch(int id, Runnable wakeup) {
+        return watchers.watch(id, wakeup, this::size);
+    }
+
+    @Override
+    public void unwatch(Runnable wakeup) {
+        watchers.unwatch(wakeup);
+    }
+
+    // Moves published over every stored id. Each sender stores its message before trying, so whichever of two
+    // racing senders comes last publishes both. Returns whether this call published anything.
+    private boolean publish() {
+        boolean advanced = false;
+        while (true) {
+            int next = published.get();
+            if (slot(next) == null)
+                return advanced;
+
+            if (published.compareAndSet(next, next + 1))
+                advanced = true;
+        }
+    }
+
+    // Ids below published always have a message, so readers never see a gap
+    private void copy(int fromId, int toId, Collection<Message> out) {
+        AtomicReferenceArray<AtomicReferenceArray<Message>> chunks = this.chunks;
+        for (int id = fromId; id < toId; ) {
+            AtomicReferenceArray<Message> chunk = chunks.get(id >>> CHUNK_SHIFT);
+            int chunkEnd = Math.min(toId, (id | CHUNK_MASK) + 1);
+            for (; id < chunkEnd; id++) {
+                out.add(chunk.get(id & CHUNK_MASK));
+            }
+        }
+    }
+
+    private Message slot(int id) {
+        AtomicReferenceArray<AtomicReferenceArray<Message>> chunks = this.chunks;
+        int index = id >>> CHUNK_SHIFT;
+        if (index >= chunks.length())
+            return null;
+
+        AtomicReferenceArray<Message> chunk = chunks.get(index);
+        return chunk != null ? chunk.get(id & CHUNK_MASK) : null;
+    }
+
+    private AtomicReferenceArray<Message> chunkFor(int id) {
+        int index = id >>> CHUNK_SHIFT;
+        AtomicReferenceArray<AtomicReferenceArray<Message>> chunks = this.chunks;
+        if (index < chunks.length() && chunks.get(index) != null)
+            return chunks.get(index);
+
+        growLock.lock();
+        try {
+            chunks = this.chunks;
+            if (index >= chunks.length()) {  // Only the directory is copied, chunks are shared
+                AtomicReferenceArray<AtomicReferenceArray<Message>> grown =
+                        new AtomicReferenceArray<>(Math.max(chunks.length() * 2, index + 1));
+                for (int i = 0; i < chunks.length(); i++) {
+                    grown.set(i, chunks.get(i));
+                }
+                this.chunks = chunks = grown;
+            }
+
+            if (chunks.get(index) == null)
+                chunks.set(index, new AtomicReferenceArray<>(CHUNK_SIZE));
+            return chunks.get(index);
+        } finally {
+            growLock.unlock();
+        }
+    }
+}
@@ -0,0 +1,169 @@
+package structs;
+
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.Optional;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+
+// Delivers a room's messages by reading its table from a per-connection position, so nothing is
+// queued per recipient and a slow client just lags behind. Messages outside the table (room
+// greetings) are still pushed. The single consumer is the client's sending thread.
+public class CursorMessageQueue implements MessageQueue {
+    private static final int READ_CHUNK = 64;
+
+    private record Cursor(MessageTable table, int next) {}
+
+    private final AtomicReference<Cursor> cursor;
+    private final Queue<Message> pushed;
+    private final AtomicReference<Thread> waiter;
+    private final Runnable wakeup;
+
+    private final Queue<Message> buffer;  // Consumer only, read from the table but not yet taken
+
+    public CursorMessageQueue() {
+        this.cursor = new AtomicReference<>(new Cursor(null, 0));
+        this.pushed = new ConcurrentLinkedQueue<>();
+        this.waiter = new AtomicReference<>();
+        this.wakeup = this::wake;
+        this.buffer = new ArrayDeque<>();
+    }
+
+    @Override
+    public void push(Message message) {
+        pushed.add(message);
+        wake();
+    }
+
+    @Override
+    public void pushAll(Collection<Message> messages) {
+        pushed.addAll(messages);
+        wake();
+    }
+
+    @Override
+    public Optional<Message> pop() {
+        while (true) {
+            Message message = poll();
+            if (message != null)
+                return Optional.of(message);
+
+            if (!await(0))
+                return Optional.empty();
+        }
+    }
+
+    @Override
+    public Optional<Message> pop(long timeoutMillis) {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+
+        while (true) {
+            Message message = poll();
+            if (message != null)
+                return Optional.of(message);
+
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0 || !await(remaining))
+                return Optional.empty();
+        }
+    }
+
+    @Override
+    public int drainTo(Collection<Message> out, int max) {
+        int count = 0;
+        Message message;
+        while (count < max && (message = poll()) != null) {
+            out.add(message);
+            count++;
+        }
+        return count;
+    }
+
+    @Override
+    public boolean isClosed() {
+        return false;  // Nothing is queued per message, so there is nothing to overflow
+    }
+
+    @Override
+    public boolean takeResync() {
+        return false;
+    }
+
+    @Override
+    public boolean isCursor() {
+        return true;
+    }
+
+    @Override
+    public void follow(MessageTable table) {
+        Cursor previous = cursor.getAndSet(new Cursor(table, table == null ? 0 : table.size()));
+        if (previous.table() != null)
+            previous.table().unwatch(wakeup);
+        wake();
+    }
+
+    @Override
+    public void seek(int id) {
+        cursor.updateAndGet(current -> new Cursor(current.table(), Math.max(0, id)));
+        wake();
+    }
+
+    private Message poll() {
+        Message message = pushed.poll();
+        if (message != null)
+            return message;
+
+        if (buffer.isEmpty())
+            fill();
+        return buffer.poll();
+    }
+
+    // A follow or seek racing with the read wins, and the read is thrown away
+    private void fill() {
+        while (true) {
+            Cursor current = cursor.get();
+            if (current.table() == null)
+                return;
+
+            int read = current.table().drainFrom(current.next(), buffer, READ_CHUNK);
+            if (read == 0)
+                return;
+
+            if (cursor.compareAndSet(current, new Cursor(current.table(), current.next() + read)))
+                return;
+            buffer.clear();
+        }
+    }
+
+    // Parks until something is pushed, the table grows, the cursor moves, the timeout passes (0 waits forever)
+    // or the thread is interrupted. Returns false only on interrupt, keeping the interrupt flag set.
+    private boolean await(long timeoutNanos) {
+        waiter.set(Thread.currentThread());
+
+        Cursor current = cursor.get();
+        boolean watching = current.table() != null && current.table().watch(current.next(), wakeup);
+        boolean idle = pushed.isEmpty() && (current.table() == null || watching);
+
+        // Anything that changed before we registered did not see us, so check again before parking
+        if (idle && cursor.get() == current) {
+            if (timeoutNanos > 0)
+                LockSupport.parkNanos(this, timeoutNanos);
+            else
+                LockSupport.park(this);
+        }
+
+        if (watching)
+            current.table().unwatch(wakeup);
+        waiter.set(null);
+        return !Thread.currentThread().isInterrupted();
+    }
+
+    private void wake() {
+        Thread thread = waiter.get();
+        if (thread != null && waiter.compareAndSet(thread, null))
+            LockSupport.unpark(thread);
+    }
+}
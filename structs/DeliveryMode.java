@@ -0,0 +1,17 @@
+package structs;
+
+import java.util.Optional;
+
+public enum DeliveryMode {
+    QUEUE,   // Every new message is pushed into the queue of every room member
+    CURSOR;  // Each connection reads the room table from its own position
+
+    public static Optional<DeliveryMode> fromString(String name) {
+        for (DeliveryMode value: values()) {
+            if (value.name().equalsIgnoreCase(name))
+                return Optional.of(value);
+        }
+
+        return Optional.empty();
+    }
+}
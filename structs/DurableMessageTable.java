@@ -0,0 +1,168 @@
+package structs;
+
+import exception.StorageException;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import structs.storage.MessageLog;
+import structs.storage.MessageStore;
+
+// Message table whose messages are also appended to the room's log, so the history and its ids survive restarts.
+// Only the tail allowed by the retention stays on the heap, older messages are read back from the log. Eviction
+// happens in batches, once a limit is exceeded by an eighth, and never passes what the log has written. The age limit
+// is also checked periodically through expire(), so quiet rooms age out too. With group durability a message is only
+// published once the log has committed it, so no client ever sees an id a crash could hand out again.
+public class DurableMessageTable extends SyncMessageTable {
+    private final String room;
+    private final MessageLog log;
+    private final Retention retention;
+
+    // Append times of the hot messages, oldest at appendTimesStart, only kept with an age limit. Guarded by the write lock.
+    private long[] appendTimes;
+    private int appendTimesStart;
+
+    private DurableMessageTable(String room, MessageLog log, Retention retention, int base, List<Message> hot) {
+        super(base, hot);
+        this.room = room;
+        this.log = log;
+        this.retention = retention;
+
+        if (log.waitsForCommit())  // Readers and members only see a message once it is on disk
+            log.onCommit(this::publish);
+
+        if (retention.maxAgeMillis() > 0) {  // Recovered messages count as just added
+            appendTimes = new long[Math.max(16, hot.size() * 2)];
+            Arrays.fill(appendTimes, 0, hot.size(), System.currentTimeMillis());
+        }
+    }
+
+    public static DurableMessageTable open(MessageStore store, String room, Retention retention) throws IOException {
+        List<Message> recovered = new ArrayList<>();
+        MessageLog log = store.open(room, recovered::add);
+
+        int start = 0;
+        long bytes = 0;
+        for (Message message : recovered) {
+            bytes += estimateBytes(message);
+        }
+        while (start < recovered.size()
+                && (retention.maxMessages() > 0 && recovered.size() - start > retention.maxMessages()
+                        || retention.maxBytes() > 0 && bytes > retention.maxBytes())) {
+            bytes -= estimateBytes(recovered.get(start++));
+        }
+
+        List<Message> hot = recovered.subList(start, recovered.size());
+        return new DurableMessageTable(room, log, retention, log.nextId() - hot.size(), hot);
+    }
+
+    @Override
+    protected void persist(Message message) {
+        try {
+            log.append(message);
+        } catch (IOException e) {
+            throw new StorageException("Failed to store message " + message.id() + " of room " + room, e);
+        }
+    }
+
+    @Override
+    protected boolean publishesOnAdd() {
+        return !log.waitsForCommit();
+    }
+
+    @Override
+    public void awaitDurable(Message message) {
+        try {
+            log.awaitDurable(message.id());
+        } catch (IOException e) {
+            throw new StorageException("Failed to store message " + message.id() + " of room " + room, e);
+        }
+    }
+
+    @Override
+    protected int evictable(List<Message> hot, long hotBytes) {
+        if (retention.isUnlimited())
+            return 0;
+
+        long now = System.currentTimeMillis();
+        if (appendTimes != null)
+            recordAppend(now, hot.size());
+
+        int count = 0;
+        int maxMessages = retention.maxMessages();
+        if (maxMessages > 0 && hot.size() > maxMessages + maxMessages / 8)
+            count = hot.size() - maxMessages;
+
+        long maxBytes = retention.maxBytes();
+        if (maxBytes > 0 && hotBytes > maxBytes + maxBytes / 8) {
+            int dropped = 0;
+            for (long bytes = hotBytes; bytes > maxBytes && dropped < hot.size(); dropped++) {
+                bytes -= estimateBytes(hot.get(dropped));
+            }
+            count = Math.max(count, dropped);
+        }
+
+        long maxAge = retention.maxAgeMillis();
+        if (appendTimes != null && now - appendTime(0) > maxAge + maxAge / 8) {
+            int dropped = 0;
+            while (dropped < hot.size() && now - appendTime(dropped) > maxAge) {
+                dropped++;
+            }
+            count = Math.max(count, dropped);
+        }
+
+        return drop(hot, count);
+    }
+
+    // Without the eighth of slack, the periodic check is what bounds the age of a quiet room's tail
+    @Override
+    protected int expired(List<Message> hot) {
+        if (appendTimes == null)
+            return 0;
+
+        long now = System.currentTimeMillis();
+        int count = 0;
+        while (count < hot.size() && now - appendTime(count) > retention.maxAgeMillis()) {
+            count++;
+        }
+        return drop(hot, count);
+    }
+
+    // Messages the log has not written yet cannot be read back, so they stay
+    private int drop(List<Message> hot, int count) {
+        count = Math.min(count, log.committedId() - hot.get(0).id());
+        if (count <= 0)
+            return 0;
+
+        if (appendTimes != null)
+            appendTimesStart = (appendTimesStart + count) % appendTimes.length;
+        return count;
+    }
+
+    @Override
+    protected void readEvicted(int fromId, int toId, Collection<Message> out) {
+        try {
+            log.read(fromId, toId, out);
+        } catch (IOException e) {
+            throw new StorageException("Failed to read messages " + fromId + " to " + toId + " of room " + room, e);
+        }
+    }
+
+    // The hot list already holds the message, so it is the last of hotCount
+    private void recordAppend(long time, int hotCount) {
+        if (hotCount > appendTimes.length) {
+            long[] grown = new long[appendTimes.length * 2];
+            for (int i = 0; i < hotCount - 1; i++) {
+                grown[i] = appendTime(i);
+            }
+            appendTimes = grown;
+            appendTimesStart = 0;
+        }
+        appendTimes[(appendTimesStart + hotCount - 1) % appendTimes.length] = time;
+    }
+
+    private long appendTime(int index) {
+        return appendTimes[(appendTimesStart + index) % appendTimes.length];
+    }
+}
@@ -1,3 +1,113 @@
 package structs;
 
-public record Message(int id, String username, String content) {}
+import java.util.Objects;
+import protocol.codec.BinaryCodec;
+import protocol.codec.FrameBuffer;
+import protocol.codec.TextCodec;
+import protocol.codec.WireFormat;
+import protocol.unit.RecvUnit;
+
+// Stored messages are sent to every member of a room and replayed on every sync, so the recv frame of each wire
+// format is encoded once, on first use, and shared by all of those writes. The cache lives and dies with the message.
+public final class Message {
+    // Bytes a recv frame adds around the username and content, with the largest id: "recv <id> " and quotes, or the
+    // opcode, id and string lengths
+    private static final int RECV_OVERHEAD = 32;
+
+    private final int id;
+    private final String username;
+    private final String content;
+
+    private volatile String recvLine;
+    private volatile byte[] textFrame;
+    private volatile byte[] binaryFrame;
+
+    public Message(int id, String username, String content) {
+        this.id = id;
+        this.username = username;
+        this.content = content;
+    }
+
+    // Whether the recv frames of a message would stay within the frame limits of every wire format, whatever id it
+    // gets. A stored message that is too long for its readers would close their connections on every replay.
+    public static boolean fitsFrame(String username, String content) {
+        // A char takes at most 3 bytes in UTF-8, or 2 when escaped, and most messages are far from the limit
+        long maxLength = 3L * (username.length() + content.length()) + RECV_OVERHEAD;
+        if (maxLength <= Math.min(TextCodec.MAX_FRAME_LENGTH, BinaryCodec.MAX_FRAME_LENGTH))
+            return true;
+
+        Message probe = new Message(Integer.MAX_VALUE, username, content);
+        byte[] text = probe.encode(WireFormat.TEXT);
+        byte[] binary = probe.encode(WireFormat.BINARY);
+        return text.length - 1 <= TextCodec.MAX_FRAME_LENGTH  // Without the \n
+                && BinaryCodec.bodyLength(binary) <= BinaryCodec.MAX_FRAME_LENGTH;
+    }
+
+    public int id() {
+        return id;
+    }
+
+    public String username() {
+        return username;
+    }
+
+    public String content() {
+        return content;
+    }
+
+    // The recv unit for this message in the text protocol, without the line terminator
+    public String getRecvLine() {
+        String line = recvLine;
+        if (line == null) {  // Racing threads compute the same value, any of them can win
+            line = new RecvUnit(this).serialize();
+            recvLine = line;
+        }
+        return line;
+    }
+
+    // The complete recv frame for this message, must not be modified
+    public byte[] getFrame(WireFormat format) {
+        return switch (format) {
+            case TEXT -> {
+                byte[] frame = textFrame;
+                if (frame == null) {
+                    frame = encode(format);
+                    textFrame = frame;
+                }
+                yield frame;
+            }
+            case BINARY -> {
+                byte[] frame = binaryFrame;
+                if (frame == null) {
+                    frame = encode(format);
+                    binaryFrame = frame;
+                }
+                yield frame;
+            }
+        };
+    }
+
+    private byte[] encode(WireFormat format) {
+        FrameBuffer buffer = new FrameBuffer();
+        format.newCodec(null).encode(new RecvUnit(this), buffer);
+        return buffer.toByteArray();
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        return other instanceof Message message
+                && id == message.id
+                && username.equals(message.username)
+                && content.equals(message.content);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(id, username, content);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("Message[id=%d, username=%s, content=%s]", id, username, content);
+    }
+}
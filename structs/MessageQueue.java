@@ -5,6 +5,27 @@ import java.util.Optional;
 
 public interface MessageQueue {
     void push(Message message);
+
+    // Like push, but never waits for room. Shared threads use it, so one slow member cannot hold up the others.
+    default void pushNow(Message message) {
+        push(message);
+    }
+
     void pushAll(Collection<Message> messages);
     Optional<Message> pop();
+    Optional<Message> pop(long timeoutMillis);
+    int drainTo(Collection<Message> out, int max);
+
+    boolean isClosed();
+    boolean takeResync();
+
+    // Cursor queues read the table of the room their connection is in instead of being pushed its messages.
+    // follow starts at the table's current end (null stops reading), seek moves back to an earlier id for sync.
+    default boolean isCursor() {
+        return false;
+    }
+
+    default void follow(MessageTable table) {}
+
+    default void seek(int id) {}
 }
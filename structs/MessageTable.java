@@ -1,5 +1,6 @@
 package structs;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
@@ -11,4 +12,21 @@ public interface MessageTable {
     List<Message> getAll();
     List<Message> getFrom(int id);
     List<Message> getLast(int count);
+
+    // Blocks until an added message is as durable as the table promises, called without holding room locks
+    default void awaitDurable(Message message) {}
+
+    // How much of the history is held on the heap
+    TableUsage usage();
+
+    // Drops the hot messages that outlived the retention, for rooms where no new message comes to trigger it
+    default void expire() {}
+
+    // Cursor reads, ids are positions in the table
+    int size();
+    int drainFrom(int id, Collection<Message> out, int max);
+
+    // Runs wakeup once on the next append, unless a message at id or later already exists (then returns false)
+    boolean watch(int id, Runnable wakeup);
+    void unwatch(Runnable wakeup);
 }
@@ -0,0 +1,140 @@
+package structs;
+
+import java.util.Collection;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+
+// Unbounded mailbox for many producers and a single consumer, the client's sending thread.
+// Producers link nodes with one atomic swap of the tail, and only the producer that finds
+// the consumer parked wakes it, so a busy consumer is never signalled per message.
+public class MpscMessageQueue implements MessageQueue {
+    private static final class Node {
+        private Message message;
+        private volatile Node next;
+
+        private Node(Message message) {
+            this.message = message;
+        }
+    }
+
+    private final AtomicReference<Node> tail;
+    private final AtomicReference<Thread> waiter;
+    private Node head;  // Consumer only, always the last node already taken
+
+    public MpscMessageQueue() {
+        this.head = new Node(null);
+        this.tail = new AtomicReference<>(head);
+        this.waiter = new AtomicReference<>();
+    }
+
+    @Override
+    public void push(Message message) {
+        Node node = new Node(message);
+        link(node, node);
+    }
+
+    @Override
+    public void pushAll(Collection<Message> messages) {
+        Node first = null;
+        Node last = null;
+        for (Message message : messages) {
+            Node node = new Node(message);
+            if (first == null)
+                first = node;
+            else
+                last.next = node;
+            last = node;
+        }
+
+        if (first != null)
+            link(first, last);
+    }
+
+    // The chain is only visible to the consumer once the previous tail points to it
+    private void link(Node first, Node last) {
+        Node previous = tail.getAndSet(last);
+        previous.next = first;
+
+        Thread thread = waiter.get();
+        if (thread != null && waiter.compareAndSet(thread, null))
+            LockSupport.unpark(thread);
+    }
+
+    @Override
+    public Optional<Message> pop() {
+        while (true) {
+            Message message = poll();
+            if (message != null)
+                return Optional.of(message);
+
+            if (!await(0))
+                return Optional.empty();
+        }
+    }
+
+    @Override
+    public Optional<Message> pop(long timeoutMillis) {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+
+        while (true) {
+            Message message = poll();
+            if (message != null)
+                return Optional.of(message);
+
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0 || !await(remaining))
+                return Optional.empty();
+        }
+    }
+
+    @Override
+    public int drainTo(Collection<Message> out, int max) {
+        int count = 0;
+        Message message;
+        while (count < max && (message = poll()) != null) {
+            out.add(message);
+            count++;
+        }
+        return count;
+    }
+
+    @Override
+    public boolean isClosed() {
+        return false;  // Unbounded, never overflows
+    }
+
+    @Override
+    public boolean takeResync() {
+        return false;
+    }
+
+    private Message poll() {
+        Node next = head.next;
+        if (next == null)
+            return null;
+
+        Message message = next.message;
+        next.message = null;  // The node stays as the new head, do not keep the message alive
+        head = next;
+        return message;
+    }
+
+    // Parks until a producer links a node, the timeout passes (0 waits forever) or the thread is interrupted.
+    // Returns false only on interrupt, keeping the interrupt flag set.
+    private boolean await(long timeoutNanos) {
+        waiter.set(Thread.currentThread());
+
+        // A producer that linked before we registered did not see us, so check again before parking
+        if (head.next == null) {
+            if (timeoutNanos > 0)
+                LockSupport.parkNanos(this, timeoutNanos);
+            else
+                LockSupport.park(this);
+        }
+
+        waiter.set(null);
+        return !Thread.currentThread().isInterrupted();
+    }
+}
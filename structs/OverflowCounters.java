@@ -0,0 +1,36 @@
+package structs;
+
+import java.util.concurrent.atomic.LongAdder;
+
+public class OverflowCounters {
+    private final LongAdder dropped;
+    private final LongAdder evicted;
+
+    public OverflowCounters() {
+        this.dropped = new LongAdder();
+        this.evicted = new LongAdder();
+    }
+
+    public void addDropped(int count) {
+        dropped.add(count);
+    }
+
+    public void addEvicted() {
+        evicted.increment();
+    }
+
+    // Messages discarded because a queue was full or already closed
+    public long getDropped() {
+        return dropped.sum();
+    }
+
+    // Connections disconnected or backlogs discarded because of an overflow
+    public long getEvicted() {
+        return evicted.sum();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%d dropped, %d evicted", getDropped(), getEvicted());
+    }
+}
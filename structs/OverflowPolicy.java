@@ -0,0 +1,18 @@
+package structs;
+
+import java.util.Optional;
+
+public enum OverflowPolicy {
+    DISCONNECT,  // Close the slow connection
+    RESYNC,      // Drop the backlog, the client catches up through sync
+    BLOCK;       // Make the producer wait for space, disconnect on timeout
+
+    public static Optional<OverflowPolicy> fromString(String name) {
+        for (OverflowPolicy value: values()) {
+            if (value.name().equalsIgnoreCase(name))
+                return Optional.of(value);
+        }
+
+        return Optional.empty();
+    }
+}
@@ -0,0 +1,9 @@
+package structs;
+
+// How much of a room's history a table keeps on the heap, older messages are read back from storage.
+// A limit of 0 disables it, a message is dropped once any of the others is exceeded.
+public record Retention(int maxMessages, long maxBytes, long maxAgeMillis) {
+    public boolean isUnlimited() {
+        return maxMessages == 0 && maxBytes == 0 && maxAgeMillis == 0;
+    }
+}
@@ -1,6 +1,7 @@
 package structs;
 
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
 import java.util.Optional;
@@ -8,13 +9,33 @@ import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 import server.client.RoomUser;
 
+// Holds the hot tail of the room's history, from id base on. Subclasses may evict older messages, which are then
+// read back through readEvicted() outside the lock, since messages never change once added. Readers only see the
+// published prefix, which subclasses may hold back until the messages are durable.
 public class SyncMessageTable implements MessageTable {
     private final List<Message> messages;
     private final ReentrantReadWriteLock.ReadLock readLock;
     private final ReentrantReadWriteLock.WriteLock writeLock;
+    private final TableWatchers watchers;
+    private volatile int base;
+    private volatile int size;
+    private volatile int published;  // Ids below it are visible to readers, written under the write lock
+    private long hotBytes;  // Guarded by the write lock
 
     public SyncMessageTable() {
-        this.messages = new ArrayList<>();
+        this(0, List.of());
+    }
+
+    // Starts with the latest messages recovered from storage, the first of which has id base
+    protected SyncMessageTable(int base, List<Message> messages) {
+        this.messages = new ArrayList<>(messages);
+        this.watchers = new TableWatchers();
+        this.base = base;
+        this.size = base + messages.size();
+        this.published = size;
+        for (Message message : messages) {
+            hotBytes += estimateBytes(message);
+        }
 
         ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
         this.readLock = lock.readLock();
@@ -23,83 +44,196 @@ public class SyncMessageTable implements MessageTable {
 
     @Override
     public Message add(RoomUser user, String content) {
-        int id = messages.size();
-        Message message = new Message(id, user.getName(), content);
+        Message message;
 
         writeLock.lock();
         try {
+            message = new Message(size, user.getName(), content);
+            persist(message);
             messages.add(message);
+            hotBytes += estimateBytes(message);
+            size++;
+            if (publishesOnAdd())
+                published = size;
+
+            int evicted = evictable(Collections.unmodifiableList(messages), hotBytes);
+            if (evicted > 0)
+                evict(evicted);
         } finally {
             writeLock.unlock();
         }
 
+        if (publishesOnAdd())
+            watchers.wake();
         return message;
     }
 
+    // Called with the write lock held, in id order, before the message becomes visible. Throwing rejects the message.
+    protected void persist(Message message) {}
+
+    // Whether an added message is visible right away, otherwise it waits for publish()
+    protected boolean publishesOnAdd() {
+        return true;
+    }
+
+    // Makes the messages below endId visible to readers and wakes the cursor readers parked at the head
+    protected void publish(int endId) {
+        writeLock.lock();
+        try {
+            if (endId <= published)
+                return;
+            published = Math.min(endId, size);
+        } finally {
+            writeLock.unlock();
+        }
+
+        watchers.wake();
+    }
+
+    // Called with the write lock held after each add, returns how many of the oldest hot messages to drop
+    protected int evictable(List<Message> hot, long hotBytes) {
+        return 0;
+    }
+
+    // Called with the write lock held from expire(), returns how many of the oldest hot messages to drop
+    protected int expired(List<Message> hot) {
+        return 0;
+    }
+
+    // Adds the evicted messages with ids in [fromId, toId) to out, in order
+    protected void readEvicted(int fromId, int toId, Collection<Message> out) {
+        throw new IllegalStateException("Messages " + fromId + " to " + toId + " were evicted but cannot be read back");
+    }
+
+    // Rough heap footprint: the message, its two strings and the frames it caches once sent
+    protected static long estimateBytes(Message message) {
+        return 96 + 4L * (message.username().length() + message.content().length());
+    }
+
     @Override
     public Optional<Message> get(int id) {
-        Message message;
+        Message message = null;
+        boolean evicted = false;
 
         readLock.lock();
         try {
-            if (id >= 0 && id < messages.size())
-                message = messages.get(id);
+            if (id >= base && id < published)
+                message = messages.get(id - base);
             else
-                message = null;
+                evicted = id >= 0 && id < base;
         } finally {
             readLock.unlock();
         }
 
+        if (evicted) {
+            List<Message> found = new ArrayList<>(1);
+            readEvicted(id, id + 1, found);
+            message = found.isEmpty() ? null : found.get(0);
+        }
+
         return Optional.ofNullable(message);
     }
 
     @Override
     public List<Message> getAll() {
-        List<Message> messages;
+        return getFrom(0);
+    }
 
-        readLock.lock();
+    @Override
+    public List<Message> getFrom(int id) {
+        if (id < 0 || id >= published)
+            return Collections.emptyList();
+
+        List<Message> messages = new ArrayList<>();
+        copy(id, Integer.MAX_VALUE, messages);
+        return Collections.unmodifiableList(messages);
+    }
+
+    @Override
+    public List<Message> getLast(int count) {
+        return getFrom(Math.max(0, published - Math.max(0, count)));
+    }
+
+    @Override
+    public void expire() {
+        writeLock.lock();
         try {
-            messages = Collections.unmodifiableList(this.messages);
+            int expired = messages.isEmpty() ? 0 : expired(Collections.unmodifiableList(messages));
+            if (expired > 0)
+                evict(expired);
         } finally {
-            readLock.unlock();
+            writeLock.unlock();
         }
-
-        return messages;
     }
 
     @Override
-    public List<Message> getFrom(int id) {
-        List<Message> messages;
-
+    public TableUsage usage() {
         readLock.lock();
         try {
-            if (id >= 0 && id < this.messages.size())
-                messages = Collections.unmodifiableList(this.messages.subList(id, this.messages.size()));
-            else
-                messages = Collections.emptyList();
+            return new TableUsage(messages.size(), hotBytes, size);
         } finally {
             readLock.unlock();
         }
+    }
 
-        return messages;
+    @Override
+    public int size() {
+        return published;
     }
 
     @Override
-    public List<Message> getLast(int count) {
-        List<Message> messages;
+    public int drainFrom(int id, Collection<Message> out, int max) {
+        if (id < 0)
+            id = 0;
+        if (max <= 0)
+            return 0;
 
-        readLock.lock();
-        try {
-            if (this.messages.isEmpty()) {
-                messages = Collections.emptyList();
-            } else {
-                int start = Math.max(0, this.messages.size() - Math.max(0, count));
-                messages = Collections.unmodifiableList(this.messages.subList(start, this.messages.size()));
+        return copy(id, id + max, out);
+    }
+
+    @Override
+    public boolean watch(int id, Runnable wakeup) {
+        return watchers.watch(id, wakeup, this::size);
+    }
+
+    @Override
+    public void unwatch(Runnable wakeup) {
+        watchers.unwatch(wakeup);
+    }
+
+    // Copies the messages with ids in [fromId, toId) into out. Hot ones are copied under the lock, so the caller never
+    // iterates the list while it changes; evicted ones are read without it, again if eviction moved on meanwhile.
+    private int copy(int fromId, int toId, Collection<Message> out) {
+        int next = fromId;
+        while (next < toId) {
+            int evictedEnd;
+
+            readLock.lock();
+            try {
+                if (next >= base) {
+                    int end = Math.min(published, toId);
+                    for (int id = next; id < end; id++) {
+                        out.add(messages.get(id - base));
+                    }
+                    return Math.max(0, end - fromId);
+                }
+                evictedEnd = Math.min(base, toId);
+            } finally {
+                readLock.unlock();
             }
-        } finally {
-            readLock.unlock();
+
+            readEvicted(next, evictedEnd, out);
+            next = evictedEnd;
         }
+        return next - fromId;
+    }
 
-        return messages;
+    private void evict(int count) {
+        List<Message> evicted = messages.subList(0, count);
+        for (Message message : evicted) {
+            hotBytes -= estimateBytes(message);
+        }
+        evicted.clear();
+        base += count;
     }
 }
@@ -0,0 +1,9 @@
+package structs;
+
+// Heap bytes are an estimate, see SyncMessageTable
+public record TableUsage(int hotMessages, long hotBytes, int storedMessages) {
+    @Override
+    public String toString() {
+        return String.format("%d of %d messages on the heap (~%d KiB)", hotMessages, storedMessages, hotBytes >> 10);
+    }
+}
@@ -0,0 +1,40 @@
+package structs;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.IntSupplier;
+
+// Cursor readers parked at the head of a table, each woken once by the next append
+final class TableWatchers {
+    private final Set<Runnable> watchers;
+
+    TableWatchers() {
+        this.watchers = ConcurrentHashMap.newKeySet();
+    }
+
+    boolean watch(int id, Runnable wakeup, IntSupplier size) {
+        watchers.add(wakeup);
+
+        // An append that happened before the watcher was visible has to be caught here
+        if (size.getAsInt() > id) {
+            watchers.remove(wakeup);
+            return false;
+        }
+        return true;
+    }
+
+    void unwatch(Runnable wakeup) {
+        watchers.remove(wakeup);
+    }
+
+    // Only readers parked at the head are woken, the ones still catching up cost nothing
+    void wake() {
+        if (watchers.isEmpty())
+            return;
+
+        for (Runnable wakeup : watchers) {
+            if (watchers.remove(wakeup))
+                wakeup.run();
+        }
+    }
+}
@@ -0,0 +1,48 @@
+package structs;
+
+import java.util.concurrent.locks.ReentrantLock;
+
+public class TokenBucket {
+    private final double ratePerNano;
+    private final int burst;
+    private final ReentrantLock lock;
+
+    private double tokens;
+    private long lastRefill;
+
+    public TokenBucket(double ratePerSecond, int burst) {
+        this.ratePerNano = ratePerSecond / 1_000_000_000.0;
+        this.burst = burst;
+        this.lock = new ReentrantLock();
+
+        this.tokens = burst;
+        this.lastRefill = System.nanoTime();
+    }
+
+    public boolean tryAcquire() {
+        lock.lock();
+        try {
+            long now = System.nanoTime();
+            tokens = Math.min(burst, tokens + (now - lastRefill) * ratePerNano);
+            lastRefill = now;
+
+            if (tokens < 1)
+                return false;
+
+            tokens--;
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Gives back a token taken by tryAcquire for a request that was rejected elsewhere
+    public void release() {
+        lock.lock();
+        try {
+            tokens = Math.min(burst, tokens + 1);
+        } finally {
+            lock.unlock();
+        }
+    }
+}
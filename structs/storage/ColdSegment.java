@@ -0,0 +1,188 @@
+package structs.storage;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+import structs.Message;
+
+// Compressed copy of a sealed segment, made of independently deflated blocks so a read only inflates
+// the blocks holding the ids it asks for. Block layout: <int compressed length> <int raw length>
+// <int first id> <deflated records>, the records being exactly those of the segment. Its index has
+// an entry per block.
+final class ColdSegment {
+    private static final int BLOCK_HEADER_LENGTH = 12;
+    private static final int BLOCK_RAW_LENGTH = 64 << 10;
+
+    private record Block(int position, int compressedLength, int rawLength, int firstId) {}
+
+    private ColdSegment() {}
+
+    // Written next to the target and moved over it, so a cold segment is either complete or absent.
+    // Its index is moved in place first.
+    static SegmentIndex write(Path segment, Path target) throws IOException {
+        Path temp = target.resolveSibling(target.getFileName() + ".tmp");
+        SegmentIndex index = new SegmentIndex();
+        long written = 0;
+
+        try (FileChannel in = FileChannel.open(segment, StandardOpenOption.READ);
+                FileChannel out = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                        StandardOpenOption.TRUNCATE_EXISTING)) {
+            MappedByteBuffer map = in.map(FileChannel.MapMode.READ_ONLY, 0, in.size());
+            Deflater deflater = new Deflater();
+            byte[] compressed = new byte[BLOCK_RAW_LENGTH];
+
+            try {
+                while (map.hasRemaining()) {
+                    int start = map.position();
+                    int firstId = map.getInt(start + MessageLog.HEADER_LENGTH);
+
+                    // Whole records only, at least one even if it is larger than a block
+                    int end = start;
+                    do {
+                        end += MessageLog.HEADER_LENGTH + map.getInt(end);
+                    } while (end < map.limit() && end - start < BLOCK_RAW_LENGTH);
+
+                    deflater.reset();
+                    deflater.setInput(map.slice(start, end - start));
+                    deflater.finish();
+
+                    ByteBuffer block = ByteBuffer.allocate(BLOCK_HEADER_LENGTH + end - start + 64);
+                    block.position(BLOCK_HEADER_LENGTH);
+                    while (!deflater.finished()) {
+                        int length = deflater.deflate(compressed);
+                        if (block.remaining() < length)
+                            block = grow(block, length);
+                        block.put(compressed, 0, length);
+                    }
+
+                    block.putInt(0, block.position() - BLOCK_HEADER_LENGTH);
+                    block.putInt(4, end - start);
+                    block.putInt(8, firstId);
+                    block.flip();
+                    index.add(firstId, written);
+                    written += block.remaining();
+                    while (block.hasRemaining()) {
+                        out.write(block);
+                    }
+
+                    map.position(end);
+                }
+            } finally {
+                deflater.end();
+            }
+
+            out.force(true);
+        }
+
+        index.write(SegmentIndex.pathOf(target));
+        Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        return index;
+    }
+
+    // Adds the messages with ids in [fromId, toId) held by the segment, in order. Starts at the block
+    // the index gives for fromId and inflates blocks until toId. The map is the whole segment, mapped once
+    // by the log and only read with absolute positions, so readers can share it.
+    static void read(Path segment, ByteBuffer map, SegmentIndex index, int fromId, int toId, Collection<Message> out)
+            throws IOException {
+        long start = index.floor(fromId);
+        Inflater inflater = new Inflater();
+        CRC32 crc = new CRC32();
+
+        try {
+            int position = start == -1 ? 0 : SegmentIndex.position(start);
+            int id = fromId;
+            while (position < map.limit() && id < toId) {
+                Block block = readBlock(map, position);
+                ByteBuffer records = inflate(map, block, inflater);
+
+                for (id = block.firstId(); records.hasRemaining() && id < toId; id++) {
+                    Message message = MessageLog.decode(records, crc, id);
+                    if (message == null)
+                        throw new IOException("Corrupted record " + id + " in " + segment);
+
+                    if (id >= fromId)
+                        out.add(message);
+                }
+                position += BLOCK_HEADER_LENGTH + block.compressedLength();
+            }
+        } finally {
+            inflater.end();
+        }
+    }
+
+    // Id following the last message of the segment
+    static int endId(Path segment, ByteBuffer map, SegmentIndex index) throws IOException {
+        long last = index.last();
+        if (last == -1)
+            throw new IOException("Empty cold segment " + segment);
+
+        List<Message> messages = new ArrayList<>();
+        read(segment, map, index, SegmentIndex.id(last), Integer.MAX_VALUE, messages);
+        return messages.getLast().id() + 1;
+    }
+
+    // Rebuilds a missing or damaged index from the block headers
+    static SegmentIndex index(Path segment, ByteBuffer map) throws IOException {
+        SegmentIndex index = new SegmentIndex();
+        for (Block block : listBlocks(map)) {
+            index.add(block.firstId(), block.position());
+        }
+
+        index.write(SegmentIndex.pathOf(segment));
+        return index;
+    }
+
+    private static List<Block> listBlocks(ByteBuffer map) throws IOException {
+        List<Block> blocks = new ArrayList<>();
+        int position = 0;
+        while (position < map.limit()) {
+            if (map.limit() - position < BLOCK_HEADER_LENGTH)
+                throw new IOException("Truncated cold segment block at byte " + position);
+
+            Block block = readBlock(map, position);
+            blocks.add(block);
+            position += BLOCK_HEADER_LENGTH + block.compressedLength();
+        }
+        return blocks;
+    }
+
+    private static Block readBlock(ByteBuffer map, int position) {
+        return new Block(position, map.getInt(position), map.getInt(position + 4), map.getInt(position + 8));
+    }
+
+    private static ByteBuffer inflate(ByteBuffer map, Block block, Inflater inflater) throws IOException {
+        inflater.reset();
+        inflater.setInput(map.slice(block.position() + BLOCK_HEADER_LENGTH, block.compressedLength()));
+
+        ByteBuffer records = ByteBuffer.allocate(block.rawLength());
+        try {
+            while (records.hasRemaining() && !inflater.finished()) {
+                if (inflater.inflate(records) == 0 && inflater.needsInput())
+                    break;
+            }
+        } catch (DataFormatException e) {
+            throw new IOException("Corrupted cold segment block at byte " + block.position(), e);
+        }
+
+        if (records.hasRemaining())
+            throw new IOException("Short cold segment block at byte " + block.position());
+        return records.flip();
+    }
+
+    private static ByteBuffer grow(ByteBuffer buffer, int needed) {
+        ByteBuffer bigger = ByteBuffer.allocate(Math.max(buffer.capacity() * 2, buffer.position() + needed));
+        return bigger.put(buffer.flip());
+    }
+}
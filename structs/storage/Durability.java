@@ -0,0 +1,18 @@
+package structs.storage;
+
+import java.util.Optional;
+
+public enum Durability {
+    GROUP,     // Senders wait until the group holding their message is forced to disk
+    INTERVAL,  // Logs are forced every fsync interval, senders never wait
+    ASYNC;     // Logs are left to the OS to flush, senders never wait
+
+    public static Optional<Durability> fromString(String name) {
+        for (Durability value: values()) {
+            if (value.name().equalsIgnoreCase(name))
+                return Optional.of(value);
+        }
+
+        return Optional.empty();
+    }
+}
@@ -0,0 +1,102 @@
+package structs.storage;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+// Single thread writing the records of every room log. Whatever was appended while the previous group was being
+// written forms the next group: each log gets one gathering write for it and, with GROUP durability, one force.
+public class LogWriter {
+    private record Pending(MessageLog log, ByteBuffer record) {}
+
+    private final Durability durability;
+    private final long fsyncInterval;  // ms
+    private final BlockingQueue<Pending> queue;
+    private final Set<MessageLog> unforced;  // Writer thread only
+
+    public LogWriter(Durability durability, long fsyncInterval) {
+        this.durability = durability;
+        this.fsyncInterval = fsyncInterval;
+        this.queue = new LinkedBlockingQueue<>();
+        this.unforced = new LinkedHashSet<>();
+
+        Thread.ofPlatform().name("log-writer").daemon().start(this::run);
+    }
+
+    public Durability getDurability() {
+        return durability;
+    }
+
+    // Records of the same log must be submitted in order
+    void submit(MessageLog log, ByteBuffer record) {
+        queue.add(new Pending(log, record));
+    }
+
+    private void run() {
+        List<Pending> group = new ArrayList<>();
+        long nextForce = System.currentTimeMillis() + fsyncInterval;
+
+        try {
+            while (true) {
+                Pending first = durability == Durability.INTERVAL
+                        ? queue.poll(Math.max(0, nextForce - System.currentTimeMillis()), TimeUnit.MILLISECONDS)
+                        : queue.take();
+
+                if (first != null) {
+                    group.add(first);
+                    queue.drainTo(group);
+                    commit(group);
+                    group.clear();
+                }
+
+                if (durability == Durability.INTERVAL && System.currentTimeMillis() >= nextForce) {
+                    forceAll();
+                    nextForce = System.currentTimeMillis() + fsyncInterval;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void commit(List<Pending> group) {
+        Map<MessageLog, List<ByteBuffer>> byLog = new LinkedHashMap<>();
+        for (Pending pending : group) {
+            byLog.computeIfAbsent(pending.log(), log -> new ArrayList<>()).add(pending.record());
+        }
+
+        for (Map.Entry<MessageLog, List<ByteBuffer>> entry : byLog.entrySet()) {
+            MessageLog log = entry.getKey();
+            try {
+                log.write(entry.getValue());
+                if (durability == Durability.GROUP)
+                    log.force();
+                else
+                    unforced.add(log);
+
+                log.committed(entry.getValue().size());
+            } catch (IOException e) {
+                log.fail(e);
+            }
+        }
+    }
+
+    private void forceAll() {
+        for (MessageLog log : unforced) {
+            try {
+                log.force();
+            } catch (IOException e) {
+                log.fail(e);
+            }
+        }
+        unforced.clear();
+    }
+}
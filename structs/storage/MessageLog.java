@@ -0,0 +1,534 @@
+package structs.storage;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.function.IntConsumer;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+import structs.Message;
+
+// Append-only log of the messages of one room, split into segment files named after the id of their first message.
+// Record layout: <int payload length> <int CRC32 of the payload> <payload>, where the payload is
+// <int id> <username> <content> and strings are an int byte length followed by UTF-8 bytes.
+// Appending only encodes the record, the shared LogWriter writes it to the file. Once a segment is sealed it is
+// compressed into a cold segment (see ColdSegment) that replaces it. Each segment has a sparse SegmentIndex, so a
+// read from any id is a binary search plus a scan of at most one index interval: raw segments index every
+// SegmentIndex.INTERVAL-th record on the heap, rebuilt when they are recovered, cold ones map their index file.
+// A sealed or cold segment is mapped once, when it is created or recovered, and every read works on that mapping.
+// The active segment still grows, so it is read through a channel kept open next to the one it is written with.
+public final class MessageLog implements Closeable {
+    private static final String SEGMENT_SUFFIX = ".seg";
+    private static final String COLD_SUFFIX = ".cold";
+    static final int HEADER_LENGTH = 8;
+    private static final int MIN_PAYLOAD_LENGTH = 12;
+
+    // Sealed and cold segments have a map, the active one a reader
+    private record Segment(int firstId, Path path, boolean cold, SegmentIndex index, ByteBuffer map,
+            FileChannel reader) {}
+
+    private final Path dir;
+    private final long segmentBytes;
+    private final LogWriter writer;
+
+    private final ReentrantLock segmentLock;
+    private volatile List<Segment> segments;  // In id order, replaced as a whole under segmentLock
+
+    private int nextId;  // Guarded by the caller, appends come in id order
+
+    // Writer thread only
+    private FileChannel channel;
+    private Segment active;
+    private long segmentSize;
+    private int writtenId;
+
+    private final ReentrantLock commitLock;
+    private final Condition commitChanged;
+    private volatile int committedId;  // Written under commitLock, every id below it is committed
+    private volatile IOException failure;
+    private volatile IntConsumer commitListener;
+
+    private MessageLog(Path dir, long segmentBytes, LogWriter writer) {
+        this.dir = dir;
+        this.segmentBytes = segmentBytes;
+        this.writer = writer;
+        this.segmentLock = new ReentrantLock();
+        this.segments = List.of();
+        this.commitLock = new ReentrantLock();
+        this.commitChanged = commitLock.newCondition();
+    }
+
+    // Replays the messages of the raw segments that follow the last cold one, in id order. A record that is cut short
+    // or fails its checksum ends the log: the file is truncated there and any later segment is removed, so ids always
+    // stay contiguous. Raw segments left sealed by a crash are compressed again.
+    public static MessageLog open(Path dir, long segmentBytes, LogWriter writer, Consumer<Message> recovered)
+            throws IOException {
+        Files.createDirectories(dir);
+
+        MessageLog log = new MessageLog(dir, segmentBytes, writer);
+        List<Segment> found = listSegments(dir);
+
+        int lastCold = -1;
+        for (int i = 0; i < found.size(); i++) {
+            if (found.get(i).cold())
+                lastCold = i;
+        }
+
+        List<Segment> kept = new ArrayList<>();
+        for (int i = 0; i < found.size(); i++) {
+            Segment segment = found.get(i);
+            if (segment.firstId() != log.nextId)  // A segment is missing, what follows cannot be used
+                break;
+
+            if (segment.cold()) {
+                ByteBuffer map = map(segment.path());
+                SegmentIndex index = SegmentIndex.map(SegmentIndex.pathOf(segment.path()), segment.firstId());
+                if (index == null)
+                    index = ColdSegment.index(segment.path(), map);
+
+                kept.add(new Segment(segment.firstId(), segment.path(), true, index, map, null));
+                log.nextId = ColdSegment.endId(segment.path(), map, index);
+            } else {
+                SegmentIndex index = new SegmentIndex();
+                kept.add(new Segment(segment.firstId(), segment.path(), false, index, null, null));
+                if (!log.recover(segment.path(), index, i > lastCold ? recovered : message -> {}))
+                    break;
+            }
+        }
+
+        for (Segment later : found.subList(kept.size(), found.size())) {
+            System.err.printf("Removing message segment %s past the end of the log%n", later.path());
+            Files.delete(later.path());
+            Files.deleteIfExists(SegmentIndex.pathOf(later.path()));
+        }
+
+        for (int i = 0; i < kept.size() - 1; i++) {
+            Segment sealed = kept.get(i);
+            if (!sealed.cold())
+                kept.set(i, mapped(sealed));
+        }
+
+        if (kept.isEmpty() || kept.getLast().cold())
+            kept.add(log.openSegment(log.nextId, new SegmentIndex()));
+        else
+            kept.set(kept.size() - 1, log.openSegment(kept.getLast().firstId(), kept.getLast().index()));
+
+        log.segments = List.copyOf(kept);
+        log.writtenId = log.nextId;
+        log.committedId = log.nextId;
+
+        for (Segment sealed : kept.subList(0, kept.size() - 1)) {
+            if (!sealed.cold())
+                log.compress(sealed);
+        }
+        return log;
+    }
+
+    public int nextId() {
+        return nextId;
+    }
+
+    // Messages must be appended in id order, starting at nextId()
+    public void append(Message message) throws IOException {
+        if (failure != null)
+            throw new IOException("Log of " + dir + " failed earlier", failure);
+        if (message.id() != nextId)
+            throw new IllegalArgumentException("Expected message " + nextId + ", got " + message.id());
+
+        writer.submit(this, encode(message));
+        nextId++;
+    }
+
+    // Whether senders wait in awaitDurable for their message to be forced to disk
+    public boolean waitsForCommit() {
+        return writer.getDurability() == Durability.GROUP;
+    }
+
+    // Runs on the writer thread with the new committed id, before awaitDurable returns for any id below it
+    public void onCommit(IntConsumer listener) {
+        commitListener = listener;
+    }
+
+    // Returns once the message is as durable as the writer's mode promises, senders only wait with GROUP
+    public void awaitDurable(int id) throws IOException {
+        if (!waitsForCommit())
+            return;
+
+        commitLock.lock();
+        try {
+            while (committedId <= id && failure == null)
+                commitChanged.await();
+
+            if (committedId <= id)
+                throw new IOException("Log of " + dir + " failed", failure);
+        } catch (InterruptedException e) {  // The message may not be durable yet, so it must not be acknowledged
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for message " + id + " of " + dir);
+        } finally {
+            commitLock.unlock();
+        }
+    }
+
+    // Every id below it has been written, so it can be read back
+    public int committedId() {
+        return committedId;
+    }
+
+    // Adds the stored messages with ids in [fromId, toId) to out, in order. Only committed ids may be asked for.
+    public void read(int fromId, int toId, Collection<Message> out) throws IOException {
+        while (true) {
+            List<Segment> segments = this.segments;
+            List<Message> messages = new ArrayList<>();
+
+            try {
+                for (int i = 0; i < segments.size(); i++) {
+                    Segment segment = segments.get(i);
+                    int endId = i + 1 < segments.size() ? segments.get(i + 1).firstId() : Integer.MAX_VALUE;
+                    if (endId <= fromId)
+                        continue;
+                    if (segment.firstId() >= toId)
+                        break;
+
+                    if (segment.cold())
+                        ColdSegment.read(segment.path(), segment.map(), segment.index(), fromId, toId, messages);
+                    else
+                        readRaw(segment, fromId, Math.min(toId, endId), messages);
+                }
+            } catch (ClosedChannelException e) {
+                if (this.segments == segments)
+                    throw e;
+                continue;  // The segment was sealed in the meantime
+            }
+
+            out.addAll(messages);
+            return;
+        }
+    }
+
+    void write(List<ByteBuffer> records) throws IOException {
+        if (failure != null)
+            throw failure;
+
+        ByteBuffer[] buffers = records.toArray(ByteBuffer[]::new);
+        long length = 0;
+        for (ByteBuffer buffer : buffers) {
+            length += buffer.remaining();
+        }
+
+        try {
+            long written = 0;
+            while (written < length) {
+                written += channel.write(buffers);
+            }
+        } catch (IOException e) {
+            channel.truncate(segmentSize);  // Best effort, a partial record would end the log on recovery
+            throw e;
+        }
+
+        long position = segmentSize;
+        for (ByteBuffer buffer : buffers) {
+            if ((writtenId - active.firstId()) % SegmentIndex.INTERVAL == 0)
+                active.index().add(writtenId, position);
+
+            position += buffer.limit();
+            writtenId++;
+        }
+
+        segmentSize += length;
+        if (segmentSize >= segmentBytes)
+            roll();
+    }
+
+    void force() throws IOException {
+        channel.force(false);
+    }
+
+    void committed(int count) {
+        IntConsumer listener = commitListener;
+        if (listener != null)
+            listener.accept(committedId + count);  // Only the writer thread changes committedId
+
+        commitLock.lock();
+        try {
+            committedId += count;
+            commitChanged.signalAll();
+        } finally {
+            commitLock.unlock();
+        }
+    }
+
+    void fail(IOException e) {
+        commitLock.lock();
+        try {
+            failure = e;
+            commitChanged.signalAll();
+        } finally {
+            commitLock.unlock();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+        active.reader().close();
+    }
+
+    // Returns false if the segment had to be cut short
+    private boolean recover(Path segment, SegmentIndex index, Consumer<Message> recovered) throws IOException {
+        try (FileChannel file = FileChannel.open(segment, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            MappedByteBuffer map = file.map(FileChannel.MapMode.READ_ONLY, 0, file.size());
+            CRC32 crc = new CRC32();
+
+            int end = 0;
+            for (int firstId = nextId; map.remaining() >= HEADER_LENGTH; ) {
+                Message message = decode(map, crc, nextId);
+                if (message == null)
+                    break;
+
+                if ((nextId - firstId) % SegmentIndex.INTERVAL == 0)
+                    index.add(nextId, end);
+
+                recovered.accept(message);
+                nextId++;
+                end = map.position();
+            }
+
+            if (end == file.size())
+                return true;
+
+            System.err.printf("Truncating torn message segment %s at byte %d of %d%n", segment, end, file.size());
+            file.truncate(end);
+            file.force(true);
+            return false;
+        }
+    }
+
+    private void readRaw(Segment segment, int fromId, int toId, Collection<Message> out) throws IOException {
+        int id = segment.firstId();
+        int position = 0;
+        long start = segment.index().floor(fromId);
+        if (start != -1) {
+            id = SegmentIndex.id(start);
+            position = SegmentIndex.position(start);
+        }
+
+        ByteBuffer records = segment.map() != null
+                ? segment.map().duplicate().position(position)
+                : readActive(segment, position, toId);
+        CRC32 crc = new CRC32();
+
+        for (; id < toId; id++) {
+            Message message = records.remaining() >= HEADER_LENGTH ? decode(records, crc, id) : null;
+            if (message == null)
+                throw new IOException("Missing record " + id + " in " + segment.path());
+
+            if (id >= fromId)
+                out.add(message);
+        }
+    }
+
+    // Reads the records from position up to the index entry at or past toId, or up to what was written so far
+    private static ByteBuffer readActive(Segment segment, int position, int toId) throws IOException {
+        long next = segment.index().ceiling(toId);
+        long end = next != -1 ? SegmentIndex.position(next) : segment.reader().size();
+
+        ByteBuffer records = ByteBuffer.allocate((int) (end - position));
+        while (records.hasRemaining()) {
+            if (segment.reader().read(records, position + records.position()) < 0)
+                break;
+        }
+        return records.flip();
+    }
+
+    // Stays valid after the channel is closed, until the mapping itself is collected
+    static ByteBuffer map(Path path) throws IOException {
+        try (FileChannel file = FileChannel.open(path, StandardOpenOption.READ)) {
+            return file.map(FileChannel.MapMode.READ_ONLY, 0, file.size());
+        }
+    }
+
+    private static Segment mapped(Segment sealed) throws IOException {
+        return new Segment(sealed.firstId(), sealed.path(), false, sealed.index(), map(sealed.path()), null);
+    }
+
+    // Returns null, leaving the position anywhere, if the record at the position is incomplete, corrupted
+    // or not the expected one
+    static Message decode(ByteBuffer buffer, CRC32 crc, int expectedId) {
+        if (buffer.remaining() < HEADER_LENGTH)
+            return null;
+
+        int start = buffer.position();
+        int length = buffer.getInt();
+        int checksum = buffer.getInt();
+        if (length < MIN_PAYLOAD_LENGTH || length > buffer.remaining())
+            return null;
+
+        crc.reset();
+        crc.update(buffer.slice(buffer.position(), length));
+        if ((int) crc.getValue() != checksum)
+            return null;
+
+        try {
+            ByteBuffer payload = buffer.slice(buffer.position(), length);
+            int id = payload.getInt();
+            String username = readString(payload);
+            String content = readString(payload);
+            if (id != expectedId || payload.hasRemaining())
+                return null;
+
+            buffer.position(start + HEADER_LENGTH + length);
+            return new Message(id, username, content);
+        } catch (BufferUnderflowException | IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    private static ByteBuffer encode(Message message) {
+        byte[] username = message.username().getBytes(StandardCharsets.UTF_8);
+        byte[] content = message.content().getBytes(StandardCharsets.UTF_8);
+        int length = MIN_PAYLOAD_LENGTH + username.length + content.length;
+
+        ByteBuffer record = ByteBuffer.allocate(HEADER_LENGTH + length);
+        record.position(HEADER_LENGTH);
+        record.putInt(message.id());
+        record.putInt(username.length).put(username);
+        record.putInt(content.length).put(content);
+
+        CRC32 crc = new CRC32();
+        crc.update(record.array(), HEADER_LENGTH, length);
+        record.putInt(0, length);
+        record.putInt(4, (int) crc.getValue());
+
+        return record.flip();
+    }
+
+    private void roll() throws IOException {
+        channel.force(false);  // Sealed segments are never written again
+        channel.close();
+
+        Segment sealed = active;
+        Segment mapped = mapped(sealed);
+        Segment next = openSegment(writtenId, new SegmentIndex());
+        replaceSegments(sealed, mapped, next);
+        sealed.reader().close();  // Readers still holding the old list retry with the new one
+        compress(mapped);
+    }
+
+    // Replaces the raw segment by its cold copy off the writer thread, readers holding the old list retry
+    private void compress(Segment sealed) {
+        Thread.ofVirtual().name("log-compactor").start(() -> {
+            Path coldPath = coldPath(sealed.firstId());
+            try {
+                ColdSegment.write(sealed.path(), coldPath);
+                SegmentIndex index = SegmentIndex.map(SegmentIndex.pathOf(coldPath), sealed.firstId());
+                if (index == null)
+                    throw new IOException("Unreadable index of " + coldPath);
+
+                replaceSegments(sealed, new Segment(sealed.firstId(), coldPath, true, index, map(coldPath), null));
+                Files.delete(sealed.path());
+            } catch (IOException e) {
+                System.err.printf("Failed to compress message segment %s: %s%n", sealed.path(), e);
+            }
+        });
+    }
+
+    private void replaceSegments(Segment old, Segment... replacements) {
+        segmentLock.lock();
+        try {
+            List<Segment> updated = new ArrayList<>(segments);
+            int index = 0;
+            while (updated.get(index) != old)  // By identity, equals would compare the mappings byte by byte
+                index++;
+            updated.remove(index);
+            updated.addAll(index, List.of(replacements));
+            segments = List.copyOf(updated);
+        } finally {
+            segmentLock.unlock();
+        }
+    }
+
+    private Segment openSegment(int firstId, SegmentIndex index) throws IOException {
+        Path path = segmentPath(firstId);
+        channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.APPEND);
+        segmentSize = channel.size();
+
+        active = new Segment(firstId, path, false, index, null, FileChannel.open(path, StandardOpenOption.READ));
+        return active;
+    }
+
+    private Path segmentPath(int firstId) {
+        return dir.resolve(String.format("%010d%s", firstId, SEGMENT_SUFFIX));
+    }
+
+    private Path coldPath(int firstId) {
+        return dir.resolve(String.format("%010d%s", firstId, COLD_SUFFIX));
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        int length = buffer.getInt();
+        if (length < 0 || length > buffer.remaining())
+            throw new BufferUnderflowException();
+
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    // A raw segment that also has a cold copy was compressed before a crash and is dropped, leftover
+    // temporary files of an interrupted compression too
+    private static List<Segment> listSegments(Path dir) throws IOException {
+        List<Path> files;
+        try (Stream<Path> list = Files.list(dir)) {
+            files = list.sorted().toList();
+        }
+
+        List<Segment> segments = new ArrayList<>();
+        for (Path file : files) {
+            String name = file.getFileName().toString();
+            if (name.endsWith(".tmp")) {
+                Files.delete(file);
+            } else if (name.matches("\\d+\\" + COLD_SUFFIX)) {
+                segments.add(new Segment(firstId(name, COLD_SUFFIX), file, true, null, null, null));
+            } else if (name.matches("\\d+\\" + SEGMENT_SUFFIX)) {
+                segments.add(new Segment(firstId(name, SEGMENT_SUFFIX), file, false, null, null, null));
+            } else if (name.endsWith(SegmentIndex.SUFFIX)) {
+                String indexed = name.substring(0, name.length() - SegmentIndex.SUFFIX.length());
+                if (!Files.exists(file.resolveSibling(indexed)))
+                    Files.delete(file);  // The cold segment it indexes was never moved in place
+            }
+        }
+
+        segments.sort(Comparator.comparingInt(Segment::firstId).thenComparing(Segment::cold, Comparator.reverseOrder()));
+
+        List<Segment> unique = new ArrayList<>();
+        for (Segment segment : segments) {
+            if (!unique.isEmpty() && unique.getLast().firstId() == segment.firstId()) {
+                Files.delete(segment.path());
+                continue;
+            }
+            unique.add(segment);
+        }
+        return unique;
+    }
+
+    private static int firstId(String name, String suffix) {
+        return Integer.parseInt(name.substring(0, name.length() - suffix.length()));
+    }
+}
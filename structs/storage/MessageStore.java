@@ -0,0 +1,46 @@
+package structs.storage;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import structs.Message;
+
+// Keeps the log of each room in its own directory. Directory names are the hex of the UTF-8 room name,
+// since room names are chosen by clients and may hold any character.
+public final class MessageStore {
+    private static final HexFormat HEX = HexFormat.of();
+
+    private final Path root;
+    private final int segmentBytes;
+    private final LogWriter writer;
+
+    public MessageStore(Path root, int segmentBytes, Durability durability, long fsyncInterval) {
+        this.root = root;
+        this.segmentBytes = segmentBytes;
+        this.writer = new LogWriter(durability, fsyncInterval);
+    }
+
+    public MessageLog open(String room, Consumer<Message> recovered) throws IOException {
+        return MessageLog.open(root.resolve(HEX.formatHex(room.getBytes(StandardCharsets.UTF_8))), segmentBytes,
+                writer, recovered);
+    }
+
+    // Names of the rooms that have a log
+    public List<String> listRooms() throws IOException {
+        if (!Files.isDirectory(root))
+            return List.of();
+
+        try (Stream<Path> dirs = Files.list(root)) {
+            return dirs.filter(Files::isDirectory)
+                    .map(dir -> dir.getFileName().toString())
+                    .filter(name -> name.matches("([0-9a-f]{2})+"))
+                    .map(name -> new String(HEX.parseHex(name), StandardCharsets.UTF_8))
+                    .toList();
+        }
+    }
+}
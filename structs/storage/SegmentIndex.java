@@ -0,0 +1,128 @@
+package structs.storage;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+// Sparse map from message ids to byte positions in a segment, sorted by id. Each entry packs an id in the high half
+// of a long and the position of its record (or block) in the low half, so an index is one primitive buffer: a heap
+// array while the segment is written, a mapped file once it is cold.
+final class SegmentIndex {
+    static final int INTERVAL = 64;  // Ids between two entries of a raw segment
+    static final String SUFFIX = ".idx";
+
+    // Written by a single thread, count is published after the entry it covers
+    private volatile LongBuffer entries;
+    private volatile int count;
+
+    SegmentIndex() {
+        this.entries = LongBuffer.allocate(INTERVAL);
+    }
+
+    private SegmentIndex(LongBuffer entries) {
+        this.entries = entries;
+        this.count = entries.limit();
+    }
+
+    // Ids must be added in increasing order
+    void add(int id, long position) {
+        LongBuffer entries = this.entries;
+        if (count == entries.capacity()) {
+            LongBuffer grown = LongBuffer.allocate(entries.capacity() * 2);
+            grown.put(entries.duplicate().clear());
+            this.entries = entries = grown;
+        }
+
+        entries.put(count, (long) id << 32 | position);
+        count++;
+    }
+
+    // The entry with the greatest id not past id, or -1 if id comes before every entry
+    long floor(int id) {
+        int count = this.count;
+        LongBuffer entries = this.entries;
+
+        int low = 0;
+        int high = count - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            if (id(entries.get(middle)) <= id)
+                low = middle + 1;
+            else
+                high = middle - 1;
+        }
+        return high < 0 ? -1 : entries.get(high);
+    }
+
+    // The entry with the smallest id not before id, or -1 if id comes after every entry
+    long ceiling(int id) {
+        int count = this.count;
+        LongBuffer entries = this.entries;
+
+        int low = 0;
+        int high = count - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            if (id(entries.get(middle)) < id)
+                low = middle + 1;
+            else
+                high = middle - 1;
+        }
+        return low == count ? -1 : entries.get(low);
+    }
+
+    long last() {
+        int count = this.count;
+        return count == 0 ? -1 : entries.get(count - 1);
+    }
+
+    static int id(long entry) {
+        return (int) (entry >>> 32);
+    }
+
+    static int position(long entry) {
+        return (int) entry;
+    }
+
+    void write(Path path) throws IOException {
+        Path temp = path.resolveSibling(path.getFileName() + ".tmp");
+
+        ByteBuffer bytes = ByteBuffer.allocate(count * Long.BYTES);
+        bytes.asLongBuffer().put(entries.duplicate().clear().limit(count));
+        try (FileChannel file = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (bytes.hasRemaining()) {
+                file.write(bytes);
+            }
+            file.force(true);
+        }
+
+        Files.move(temp, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    // Returns null if the file is missing or does not start at firstId, the caller then rebuilds it
+    static SegmentIndex map(Path path, int firstId) throws IOException {
+        if (!Files.exists(path))
+            return null;
+
+        try (FileChannel file = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = file.size();
+            if (size == 0 || size % Long.BYTES != 0)
+                return null;
+
+            LongBuffer entries = file.map(FileChannel.MapMode.READ_ONLY, 0, size).asLongBuffer();
+            if (id(entries.get(0)) != firstId)
+                return null;
+            return new SegmentIndex(entries);
+        }
+    }
+
+    static Path pathOf(Path segment) {
+        return segment.resolveSibling(segment.getFileName() + SUFFIX);
+    }
+}
@@ -45,4 +45,26 @@ public class ConfigUtils {
             return null;
         }
     }
+
+    public static int getIntProperty(Properties properties, String key, int defaultValue) {
+        Integer value = getIntProperty(properties, key);
+        return value != null ? value : defaultValue;
+    }
+
+    public static long getLongProperty(Properties properties, String key, long defaultValue) {
+        String value = properties.getProperty(key);
+        if (value == null)
+            return defaultValue;
+
+        try {
+            return Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            return defaultValue;
+        }
+    }
+
+    public static boolean getBooleanProperty(Properties properties, String key, boolean defaultValue) {
+        String value = properties.getProperty(key);
+        return value != null ? Boolean.parseBoolean(value.strip()) : defaultValue;
+    }
 }
@@ -18,7 +18,8 @@ public class SocketUtils {
     private static final String KEYSTORE_TYPE = "JKS";
     private static final String KEYMANAGER_FACTORY_ALG = "SunX509";
     private static final String SSL_CONTEXT_PROTOCOL = "TLS";
-    private static final int SO_TIMEOUT = 3000; // 3 second
+    public static final int SO_TIMEOUT = 3000; // 3 second, for connecting and protocol negotiation
+    public static final int DEFAULT_BACKLOG = 50;
 
     public static SSLSocket newSSLSocket(InetAddress address, int port, String password, String truststorePath)
             throws IOException {
@@ -33,7 +34,7 @@ public class SocketUtils {
         return socket;
     }
 
-    public static SSLServerSocket newSSLServerSocket(int port, char[] password, String keystorePath) throws Exception {
+    public static SSLContext newSSLContext(char[] password, String keystorePath) throws Exception {
         KeyStore keyStore = KeyStore.getInstance(KEYSTORE_TYPE);
         try (FileInputStream keyStoreStream = new FileInputStream(keystorePath)) {
             keyStore.load(keyStoreStream, password);
@@ -45,13 +46,20 @@ public class SocketUtils {
         SSLContext sslContext = SSLContext.getInstance(SSL_CONTEXT_PROTOCOL);
         sslContext.init(keyManagerFactory.getKeyManagers(), null, null);
 
+        return sslContext;
+    }
+
+    public static SSLServerSocket newSSLServerSocket(int port, int backlog, char[] password, String keystorePath)
+            throws Exception {
+        SSLContext sslContext = newSSLContext(password, keystorePath);
+
         SSLServerSocketFactory sslServerSocketFactory = sslContext.getServerSocketFactory();
-        SSLServerSocket serverSocket = (SSLServerSocket) sslServerSocketFactory.createServerSocket(port);
+        SSLServerSocket serverSocket = (SSLServerSocket) sslServerSocketFactory.createServerSocket(port, backlog);
 
         return serverSocket;
     }
 
     public static void configureSocket(Socket socket) throws IOException {
-        socket.setSoTimeout(SO_TIMEOUT);
+        socket.setSoTimeout(0);  // Reads block until data arrives, liveness is up to the keepalive
     }
 }
@@ -0,0 +1,124 @@
+package utils;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+// Hashed timer wheel: scheduling and cancelling are O(1), at the cost of tick-sized precision.
+// Tasks run on the wheel thread and must not block, hand anything slow over to another thread.
+public class TimerWheel {
+    private final long tickMillis;
+    private final List<Queue<Timeout>> buckets;
+    private final Queue<Timeout> pending;
+    private final long startTime;
+    private final Thread thread;
+
+    private long tick;
+
+    public TimerWheel(String name, long tickMillis, int size) {
+        this.tickMillis = tickMillis;
+        this.buckets = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            buckets.add(new ArrayDeque<>());
+        }
+
+        this.pending = new ConcurrentLinkedQueue<>();
+        this.startTime = System.currentTimeMillis();
+        this.tick = 0;
+        this.thread = Thread.ofPlatform().name(name).daemon().unstarted(this::run);
+    }
+
+    public void start() {
+        thread.start();
+    }
+
+    public Timeout schedule(Runnable task, long delayMillis) {
+        long deadline = System.currentTimeMillis() + Math.max(0, delayMillis);
+        Timeout timeout = new Timeout(task, deadline);
+        pending.add(timeout);
+        return timeout;
+    }
+
+    private void run() {
+        while (!Thread.currentThread().isInterrupted()) {
+            long tickTime = startTime + (tick + 1) * tickMillis;
+            long sleep = tickTime - System.currentTimeMillis();
+            if (sleep > 0) {
+                try {
+                    Thread.sleep(sleep);
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+
+            transferPending();
+            expire(buckets.get((int) (tick % buckets.size())));
+            tick++;
+        }
+    }
+
+    private void transferPending() {
+        Timeout timeout;
+        while ((timeout = pending.poll()) != null) {
+            if (timeout.isDone())
+                continue;
+
+            // Never place a timeout in a bucket that was already passed
+            long target = Math.max(tick, (timeout.deadline - startTime) / tickMillis);
+            timeout.rounds = (target - tick) / buckets.size();
+            buckets.get((int) (target % buckets.size())).add(timeout);
+        }
+    }
+
+    private void expire(Queue<Timeout> bucket) {
+        Iterator<Timeout> iterator = bucket.iterator();
+        while (iterator.hasNext()) {
+            Timeout timeout = iterator.next();
+            if (timeout.isDone()) {
+                iterator.remove();
+            } else if (timeout.rounds > 0) {
+                timeout.rounds--;
+            } else {
+                iterator.remove();
+                timeout.expire();
+            }
+        }
+    }
+
+    public static class Timeout {
+        private final Runnable task;
+        private final long deadline;
+        private final AtomicBoolean done;
+        private long rounds;  // Wheel thread only
+
+        private Timeout(Runnable task, long deadline) {
+            this.task = task;
+            this.deadline = deadline;
+            this.done = new AtomicBoolean(false);
+        }
+
+        // Returns false if the task already ran or was cancelled before
+        public boolean cancel() {
+            return done.compareAndSet(false, true);
+        }
+
+        public boolean isDone() {
+            return done.get();
+        }
+
+        private void expire() {
+            if (!done.compareAndSet(false, true))
+                return;
+
+            try {
+                task.run();
+            } catch (Exception e) {  // A failing task must never stop the wheel
+                e.printStackTrace();
+            }
+        }
+    }
+}